@@ -0,0 +1,432 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+//Represents a repository that works like Repository but stores its commits outside of the Java
+//heap. Every commit is a fixed size record (timestamp, clock reading, id, message location and
+//the handle of the previous commit) in a large direct buffer, and commits refer to each other by
+//int handles instead of references, so the garbage collector only ever sees one buffer per
+//65536 commits (and per megabyte of messages) no matter how long the commit chain grows.
+//Records of dropped commits are reused by later commits; the space of their messages is only
+//given back when the whole repository is synchronized into another one.
+public class ArenaRepository {
+
+    private static final int NONE = -1;
+
+    private static final int RECORD_BYTES = 32;
+    private static final int TIME_STAMP = 0;
+    private static final int ORDER = 8;
+    private static final int MESSAGE = 16;
+    private static final int ID = 24;
+    private static final int PAST = 28;
+
+    private static final int RECORD_CHUNK_BITS = 16;
+    private static final int RECORDS_PER_CHUNK = 1 << RECORD_CHUNK_BITS;
+    private static final int MESSAGE_CHUNK_BYTES = 1 << 20;
+
+    private String repositoryName;
+    private int repositoryHead;
+    private int size;
+
+    private ByteBuffer[] recordChunks;
+    private int recordCount;
+    private int freeRecords;
+
+    private ByteBuffer[] messageChunks;
+    private int messageChunkCount;
+
+    // Behavior:
+    //      - creates a new, empty, repository
+    // Exceptions:
+    //      - Throws an IllegalArgumentException if the client enters a name that is empty
+    //      - or the provided name is null
+    // Parameter:
+    //      - 'name': the name of the created repository
+    public ArenaRepository(String name) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException();
+        }
+
+        repositoryName = name;
+        release();
+    }
+
+    // Behavior:
+    //      - provides the client with the id of the most recent commit in the repo
+    // Returns:
+    //      - String: id of most recent commit (null if there are no commits in the repo)
+    public String getRepoHead() {
+        if (repositoryHead == NONE) {
+            return null;
+        }
+
+        return "" + id(repositoryHead);
+    }
+
+    // Behavior:
+    //      - provides the size of the repository (number of commits)
+    // Returns:
+    //      - int: repository size
+    public int getRepoSize() {
+        return size;
+    }
+
+    // Behavior:
+    //      - creates a representation of the repository by detailing the name of the repo
+    //      - and the current head of the repository
+    // Returns:
+    //      - String: representation of the repository and its head
+    public String toString() {
+        String stringRepresentation = repositoryName + " - ";
+
+        if (repositoryHead == NONE) {
+            return stringRepresentation + "No commits";
+        }
+
+        return stringRepresentation + "Current head: " + format(repositoryHead);
+    }
+
+    // Behavior:
+    //      - checks if the repository contains a certain commit using its id
+    // Parameter:
+    //      - 'targetId': the id of the commit that we want to check for in the repository
+    // Returns:
+    //      - boolean: true if the commit with the corresponding id is contained within the
+    //      - repository and false if it isn't contained in the repository
+    public boolean contains(String targetId) {
+        Integer target = parseId(targetId);
+
+        if (target == null) {
+            return false;
+        }
+
+        for (int commit = repositoryHead; commit != NONE; commit = past(commit)) {
+            if (id(commit) == target) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Behavior:
+    //      - returns a list of commits in the repository (most recent to least recent) based
+    //      - on the number of commits that the client provides they want to see (if that number
+    //      - is greater than the size of the repository, then the history representation will
+    //      - just include all of the commits in the repository)
+    // Exceptions:
+    //      - Throws an IllegalArgumentException if the client enters a number of commits they
+    //      - want to see in the history that is less than or equal to zero
+    // Parameter:
+    //      - 'n': the number of commits in the history that the client wants to see
+    // Returns:
+    //      - String: a representation of the history of the repository up until 'n' commits
+    public String getHistory(int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException();
+        }
+
+        StringBuilder history = new StringBuilder();
+
+        for (int commit = repositoryHead; commit != NONE && n > 0; commit = past(commit)) {
+            history.append(format(commit)).append("\n");
+            n--;
+        }
+
+        return history.toString();
+    }
+
+    // Behavior:
+    //      - adds a commit to the repository as the head of the repository (most recent commit)
+    // Parameter:
+    //      - 'message': the client provided message that will be part of the commit
+    // Returns:
+    //      - String: the id of the most recent created commit
+    public String commit(String message) {
+        int id = Repository.Commit.nextId();
+        long timeStamp = System.currentTimeMillis();
+        long order = Repository.Commit.tick(timeStamp);
+
+        repositoryHead = store(id, timeStamp, order, storeMessage(message), repositoryHead);
+        size++;
+        return "" + id;
+    }
+
+    // Behavior:
+    //      - removes a commit from the repository if the commit is present
+    // Parameter:
+    //      - 'targetId': the id of the commit that we want to remove from the repository
+    // Returns:
+    //      - boolean: true if the drop was successful (commit was present in the repository
+    //      - and was removed) and false if the drop was unsuccesful (commit wasn't present in
+    //      - the repository so nothing was removed)
+    public boolean drop(String targetId) {
+        Integer target = parseId(targetId);
+
+        if (target == null) {
+            return false;
+        }
+
+        int newer = NONE;
+        for (int commit = repositoryHead; commit != NONE; commit = past(commit)) {
+            if (id(commit) == target) {
+                if (newer == NONE) {
+                    repositoryHead = past(commit);
+                } else {
+                    setPast(newer, past(commit));
+                }
+
+                free(commit);
+                size--;
+                return true;
+            }
+
+            newer = commit;
+        }
+
+        return false;
+    }
+
+    // Behavior:
+    //      - combines another repository with this repository by adding all the
+    //      - commits from the other repository into this repository and ordering them by
+    //      - which one is most recent (the other repository is empty after this action)
+    //      - the other repository's records are copied into this repository's buffers, and
+    //      - the other repository gives all of its buffers back
+    // Parameter:
+    //      - 'other': the repository whose commits we want to combine into this repository (we
+    //                  are assuming that other is non-null and isn't this repository)
+    public void synchronize(ArenaRepository other) {
+        int ours = this.repositoryHead;
+        int theirs = other.repositoryHead;
+        int newest = NONE;
+        int previous = NONE;
+
+        while (theirs != NONE) {
+            int next;
+
+            if (ours != NONE && order(ours) >= other.order(theirs)) {
+                next = ours;
+                ours = past(ours);
+            } else {
+                next = store(other.id(theirs), other.timeStamp(theirs), other.order(theirs),
+                        storeMessage(other.message(theirs)), NONE);
+                theirs = other.past(theirs);
+            }
+
+            if (previous == NONE) {
+                newest = next;
+            } else {
+                setPast(previous, next);
+            }
+
+            previous = next;
+        }
+
+        //whatever is left of this repository is already linked in order
+        if (previous != NONE) {
+            setPast(previous, ours);
+            this.repositoryHead = newest;
+        }
+
+        this.size += other.size;
+        other.release();
+    }
+
+    // Behavior:
+    //      - empties the repository and gives back all of its buffers
+    private void release() {
+        repositoryHead = NONE;
+        size = 0;
+        recordChunks = new ByteBuffer[0];
+        recordCount = 0;
+        freeRecords = NONE;
+        messageChunks = new ByteBuffer[0];
+        messageChunkCount = 0;
+    }
+
+    // Behavior:
+    //      - turns a commit id into the number stored in the records (ids are compared as
+    //      - exact text, like in Repository, so only the id's own decimal form is accepted:
+    //      - "01" or "+1" don't name commit "1")
+    // Parameter:
+    //      - 'id': the id to convert
+    // Returns:
+    //      - Integer: the number, or null if the id isn't a number written the way commit ids
+    //      - are (no commit has that id)
+    private static Integer parseId(String id) {
+        try {
+            int number = Integer.parseInt(id);
+            return Integer.toString(number).equals(id) ? number : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Behavior:
+    //      - creates the string representation of a commit (the same as Commit.toString)
+    // Parameter:
+    //      - 'commit': handle of the commit
+    // Returns:
+    //      - String: the representation of the commit
+    private String format(int commit) {
+        return Repository.Commit.format("" + id(commit), timeStamp(commit), message(commit));
+    }
+
+    // Behavior:
+    //      - stores a new commit record, reusing the record of a dropped commit if there is one
+    // Parameters:
+    //      - 'id': the commit's id
+    //      - 'timeStamp': the time, in milliseconds, at which the commit was created
+    //      - 'order': the commit's clock reading (see Commit.order)
+    //      - 'message': location of the commit's message (see storeMessage)
+    //      - 'past': handle of the previous commit (NONE if there is none)
+    // Returns:
+    //      - int: handle of the new commit
+    private int store(int id, long timeStamp, long order, long message, int past) {
+        int commit;
+
+        if (freeRecords != NONE) {
+            commit = freeRecords;
+            freeRecords = past(commit);
+        } else {
+            if (recordCount == recordChunks.length * RECORDS_PER_CHUNK) {
+                recordChunks = Arrays.copyOf(recordChunks, recordChunks.length + 1);
+                recordChunks[recordChunks.length - 1] =
+                        ByteBuffer.allocateDirect(RECORDS_PER_CHUNK * RECORD_BYTES);
+            }
+
+            commit = recordCount++;
+        }
+
+        ByteBuffer chunk = chunk(commit);
+        int offset = offset(commit);
+        chunk.putLong(offset + TIME_STAMP, timeStamp);
+        chunk.putLong(offset + ORDER, order);
+        chunk.putLong(offset + MESSAGE, message);
+        chunk.putInt(offset + ID, id);
+        chunk.putInt(offset + PAST, past);
+        return commit;
+    }
+
+    // Behavior:
+    //      - makes the record of a dropped commit available to later commits
+    // Parameter:
+    //      - 'commit': handle of the dropped commit
+    private void free(int commit) {
+        setPast(commit, freeRecords);
+        freeRecords = commit;
+    }
+
+    // Behavior:
+    //      - stores a message as its UTF-8 length and bytes in the message buffers
+    // Parameter:
+    //      - 'message': the message to store
+    // Returns:
+    //      - long: location of the message (buffer number in the high 32 bits and position
+    //      - in that buffer in the low 32 bits)
+    private long storeMessage(String message) {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        int needed = Integer.BYTES + bytes.length;
+        ByteBuffer chunk = messageChunkCount == 0 ? null : messageChunks[messageChunkCount - 1];
+
+        if (chunk == null || chunk.remaining() < needed) {
+            if (messageChunkCount == messageChunks.length) {
+                messageChunks = Arrays.copyOf(messageChunks, Math.max(1, 2 * messageChunkCount));
+            }
+
+            chunk = ByteBuffer.allocateDirect(Math.max(MESSAGE_CHUNK_BYTES, needed));
+            messageChunks[messageChunkCount++] = chunk;
+        }
+
+        long location = ((long) (messageChunkCount - 1) << 32) | chunk.position();
+        chunk.putInt(bytes.length);
+        chunk.put(bytes);
+        return location;
+    }
+
+    // Behavior:
+    //      - reads the message of a commit back from the message buffers
+    // Parameter:
+    //      - 'commit': handle of the commit
+    // Returns:
+    //      - String: the commit's message
+    private String message(int commit) {
+        long location = chunk(commit).getLong(offset(commit) + MESSAGE);
+        ByteBuffer chunk = messageChunks[(int) (location >>> 32)];
+        int position = (int) location;
+        byte[] bytes = new byte[chunk.getInt(position)];
+
+        chunk.get(position + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Behavior:
+    //      - finds the buffer that holds a commit's record
+    // Parameter:
+    //      - 'commit': handle of the commit
+    // Returns:
+    //      - ByteBuffer: the buffer holding the record
+    private ByteBuffer chunk(int commit) {
+        return recordChunks[commit >>> RECORD_CHUNK_BITS];
+    }
+
+    // Behavior:
+    //      - finds where a commit's record starts within its buffer
+    // Parameter:
+    //      - 'commit': handle of the commit
+    // Returns:
+    //      - int: byte position of the record
+    private static int offset(int commit) {
+        return (commit & (RECORDS_PER_CHUNK - 1)) * RECORD_BYTES;
+    }
+
+    // Behavior:
+    //      - reads the time, in milliseconds, at which a commit was created
+    // Parameter:
+    //      - 'commit': handle of the commit
+    // Returns:
+    //      - long: the commit's timestamp
+    private long timeStamp(int commit) {
+        return chunk(commit).getLong(offset(commit) + TIME_STAMP);
+    }
+
+    // Behavior:
+    //      - reads the clock reading (see Commit.order) of a commit
+    // Parameter:
+    //      - 'commit': handle of the commit
+    // Returns:
+    //      - long: the commit's clock reading
+    private long order(int commit) {
+        return chunk(commit).getLong(offset(commit) + ORDER);
+    }
+
+    // Behavior:
+    //      - reads the id of a commit
+    // Parameter:
+    //      - 'commit': handle of the commit
+    // Returns:
+    //      - int: the commit's id
+    private int id(int commit) {
+        return chunk(commit).getInt(offset(commit) + ID);
+    }
+
+    // Behavior:
+    //      - reads the handle of the commit made before a commit
+    // Parameter:
+    //      - 'commit': handle of the commit
+    // Returns:
+    //      - int: handle of the previous commit (NONE if there is none)
+    private int past(int commit) {
+        return chunk(commit).getInt(offset(commit) + PAST);
+    }
+
+    // Behavior:
+    //      - changes the commit made before a commit
+    // Parameters:
+    //      - 'commit': handle of the commit
+    //      - 'past': handle of the new previous commit (NONE if there is none)
+    private void setPast(int commit, int past) {
+        chunk(commit).putInt(offset(commit) + PAST, past);
+    }
+}
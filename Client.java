@@ -7,7 +7,7 @@ public class Client {
 
     public static void main(String[] args) {
         Collections.addAll(ops, "create", "head", "history", "commit", "drop",
-                           "synchronize", "quit");
+                           "synchronize", "which", "quit");
         Scanner console = new Scanner(System.in);
         Map<String, Repository> repos = new HashMap<>();
         String op = "";
@@ -26,6 +26,7 @@ public class Client {
             op = input[0];
             name = input.length > 1 ? input[1] : "";
             while (!ops.contains(op) || (!op.equalsIgnoreCase("create") &&
+                    !op.equalsIgnoreCase("which") &&
                     !op.equalsIgnoreCase("quit") &&
                     !repos.containsKey(name))) {
                 System.out.println("  **ERROR**: Operation or repository not recognized.");
@@ -75,11 +76,35 @@ public class Client {
                 } else {
                     currRepo.synchronize(repos.get(repo));
                 }
+            } else if (op.equalsIgnoreCase("which")) {
+                System.out.print("Enter ID to look for: ");
+                String idFind = console.nextLine();
+                List<String> owners = whichReposContain(repos, idFind);
+                if (!owners.isEmpty()) {
+                    System.out.println("  " + idFind + " is in " + String.join(", ", owners));
+                } else {
+                    System.out.println("  No repository contains " + idFind);
+                }
             }
             System.out.println();
         }
     }
 
+    // Returns the names of every repository that contains the commit with the given id, in
+    // alphabetical order (a commit is in more than one repository after a fork), or an empty
+    // list if no repository contains it. Repositories that don't contain the id almost always
+    // reject it through their Bloom filter, so probing many repositories stays cheap.
+    public static List<String> whichReposContain(Map<String, Repository> repos, String id) {
+        List<String> owners = new ArrayList<>();
+        for (String name : repos.keySet()) {
+            if (repos.get(name).contains(id)) {
+                owners.add(name);
+            }
+        }
+        Collections.sort(owners);
+        return owners;
+    }
+
     // Prints out an introduction to the Mini-Git test client.
     public static void intro() {
         System.out.println("Welcome to the Mini-Git test client!");
@@ -0,0 +1,147 @@
+import java.util.*;
+
+//Represents a bounded cache of the rendered histories (the results of getHistory) of one
+//repository, so that reading the same history of an unchanged repository again costs a single
+//lookup. A page is identified by the number of commits it shows. The cache holds at most a
+//given number of characters across all of its pages, and forgets the least recently used pages
+//first when it is full. The repository tells the cache which pages a change affected, so pages
+//showing only commits that didn't move stay cached. Each repository has its own cache (see
+//Repository.getHistoryCache), so a repository that is no longer used is forgotten together with
+//its pages, and, like a repository, a cache must not be used from several threads at once.
+public class HistoryCache {
+
+    private final long maxChars;
+    private long usedChars;
+    private long hits;
+    private long misses;
+    private final LinkedHashMap<Integer, String> pages;
+    private final TreeSet<Integer> pageSizes;
+
+    // Behavior:
+    //      - creates an empty cache
+    // Exceptions:
+    //      - Throws an IllegalArgumentException if the maximum is negative
+    // Parameter:
+    //      - 'maxChars': the most characters that the cached pages may hold in total
+    public HistoryCache(long maxChars) {
+        if (maxChars < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        this.maxChars = maxChars;
+        this.pages = new LinkedHashMap<>(16, 0.75f, true);
+        this.pageSizes = new TreeSet<>();
+    }
+
+    // Behavior:
+    //      - provides the number of lookups that found a cached page
+    // Returns:
+    //      - long: number of hits
+    public long getHits() {
+        return hits;
+    }
+
+    // Behavior:
+    //      - provides the number of lookups that didn't find a cached page
+    // Returns:
+    //      - long: number of misses
+    public long getMisses() {
+        return misses;
+    }
+
+    // Behavior:
+    //      - provides the number of pages in the cache
+    // Returns:
+    //      - int: number of cached pages
+    public int getPageCount() {
+        return pages.size();
+    }
+
+    // Behavior:
+    //      - provides the number of characters held by the cached pages
+    // Returns:
+    //      - long: number of cached characters
+    public long getUsedChars() {
+        return usedChars;
+    }
+
+    // Behavior:
+    //      - forgets every cached page (the hit and miss counts are kept)
+    public void clear() {
+        pages.clear();
+        pageSizes.clear();
+        usedChars = 0;
+    }
+
+    // Behavior:
+    //      - looks up a cached page, counting the lookup as a hit or a miss
+    // Parameter:
+    //      - 'n': the number of commits the page shows
+    // Returns:
+    //      - String: the cached page (null if it isn't cached)
+    String get(int n) {
+        String history = pages.get(n);
+
+        if (history == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+
+        return history;
+    }
+
+    // Behavior:
+    //      - caches a page, forgetting the least recently used pages if the cache gets too
+    //      - large (a page larger than the whole cache isn't cached)
+    // Parameters:
+    //      - 'n': the number of commits the page shows
+    //      - 'history': the page
+    void put(int n, String history) {
+        if (history.length() > maxChars) {
+            return;
+        }
+
+        remove(n);
+        pages.put(n, history);
+        pageSizes.add(n);
+        usedChars += history.length();
+
+        Iterator<Map.Entry<Integer, String>> leastRecent = pages.entrySet().iterator();
+        while (usedChars > maxChars) {
+            Map.Entry<Integer, String> page = leastRecent.next();
+            usedChars -= page.getValue().length();
+            pageSizes.remove(page.getKey());
+            leastRecent.remove();
+        }
+    }
+
+    // Behavior:
+    //      - forgets the pages that show more than a given number of commits (the pages that
+    //      - show only the given number of most recent commits or fewer are still correct,
+    //      - because those commits didn't change)
+    // Parameter:
+    //      - 'unchanged': the number of most recent commits that are the same as before
+    void invalidate(int unchanged) {
+        NavigableSet<Integer> changed = pageSizes.tailSet(unchanged, false);
+
+        for (int n : changed) {
+            usedChars -= pages.remove(n).length();
+        }
+
+        changed.clear();
+    }
+
+    // Behavior:
+    //      - forgets a single page if it is cached
+    // Parameter:
+    //      - 'n': the number of commits the page shows
+    private void remove(int n) {
+        String history = pages.remove(n);
+
+        if (history != null) {
+            usedChars -= history.length();
+            pageSizes.remove(n);
+        }
+    }
+}
@@ -1,8 +1,9 @@
 import java.util.*;
+import java.util.concurrent.atomic.*;
 import java.text.SimpleDateFormat;
 
-//Represents a repository that contains commits (ordering them based on the time they were 
-//committed) that can be manipulated (add commits, delete commits, see all commits, put commits 
+//Represents a repository that contains commits (ordering them based on the order they were 
+//committed in) that can be manipulated (add commits, delete commits, see all commits, put commits 
 //into another repository)
 public class Repository {
 
@@ -10,25 +11,57 @@ public class Repository {
      * TODO: Implement your code here.
      */
 
+    private static final int DEFAULT_JOURNAL_DEPTH = 16;
+
+    private static final int HISTORY_CACHE_CHARS = 1 << 16;
+
     private String repositoryName;
     private Commit repositoryHead;
+    private Commit repositoryTail;
     private int size;
+    private int ownedCount;
+    private TimeIndex timeline;
+    private BloomFilter filter;
+    private int staleCount;
+    private int modCount;
+    private int journalDepth;
+    private Deque<Change> undoJournal;
+    private Deque<Change> redoJournal;
+    private Change pending;
+    private HistoryCache historyCache;
 
     // Behavior: 
-    //      - creates a new, empty, repository
+    //      - creates a new, empty, repository that can undo its last 16 changes
     // Exceptions:
     //      - Throws an IllegalArgumentException if the client enters a name that is empty
     //      - or the provided name is null
     // Parameter:
     //      - 'name': the name of the created repository
     public Repository(String name) {
-        if (name == null || name.isEmpty()) {
+        this(name, DEFAULT_JOURNAL_DEPTH);
+    } 
+
+    // Behavior: 
+    //      - creates a new, empty, repository that remembers up to 'journalDepth' of its most
+    //      - recent changes so that they can be undone (older changes are forgotten)
+    // Exceptions:
+    //      - Throws an IllegalArgumentException if the client enters a name that is empty
+    //      - or the provided name is null, or if the journal depth is negative
+    // Parameters:
+    //      - 'name': the name of the created repository
+    //      - 'journalDepth': the number of changes that can be undone (0 turns undo off)
+    public Repository(String name, int journalDepth) {
+        if (name == null || name.isEmpty() || journalDepth < 0) {
             throw new IllegalArgumentException();
         }
 
         repositoryName = name;
         size = 0;
-    } 
+        timeline = new TimeIndex();
+        this.journalDepth = journalDepth;
+        undoJournal = new ArrayDeque<>();
+        redoJournal = new ArrayDeque<>();
+    }
 
     // Behavior: 
     //      - provides the client with the id of the most recent commit in the repo
@@ -42,6 +75,68 @@ public class Repository {
         return repositoryHead.id;
     }
 
+    // Behavior: 
+    //      - provides the client with the id of the oldest commit in the repo
+    // Returns: 
+    //      - String: id of the oldest commit (null if there are no commits in the repo)
+    public String getOldest() {
+        if (repositoryTail == null) {
+            return null;
+        }
+
+        return repositoryTail.id;
+    }
+
+    // Behavior: 
+    //      - provides the most recent commit in the repo, so that code that combines several
+    //      - repositories (such as ShardedRepository) can walk their commits without copying
+    //      - them (the commits must not be changed, and a walk must stop after getRepoSize()
+    //      - commits, since the oldest commit may still link to commits that dropOldest removed)
+    // Returns: 
+    //      - Commit: the most recent commit (null if there are no commits in the repo)
+    Commit getHeadCommit() {
+        return repositoryHead;
+    }
+
+    // Behavior: 
+    //      - adds a commit to the repository as its oldest commit, so that a repository can be
+    //      - rebuilt from its most recent commit to its oldest (such as by RepositoryIO)
+    // Exceptions:
+    //      - Throws an IllegalArgumentException if the commit is more recent than the oldest
+    //      - commit in the repository, or already has a previous commit
+    // Parameter:
+    //      - 'commit': the commit to add
+    void appendOldest(Commit commit) {
+        if (commit.past != null
+                || (repositoryTail != null && commit.order > repositoryTail.order)) {
+            throw new IllegalArgumentException();
+        }
+
+        //the current oldest commit is changed, so it can't be shared with a fork
+        if (ownedCount < size) {
+            ownFrom(0);
+        }
+
+        if (repositoryTail == null) {
+            repositoryHead = commit;
+        } else {
+            repositoryTail.past = commit;
+        }
+
+        invalidateHistory(size);
+        repositoryTail = commit;
+        replaceCommits(0, 0, Collections.singletonList(commit));
+        size++;
+        ownedCount++;
+        modCount++;
+        undoJournal.clear();
+        redoJournal.clear();
+
+        if (filter != null) {
+            filter.add(commit.id);
+        }
+    }
+
     // Behavior: 
     //      - provides the size of the repository (number of commits)
     // Returns: 
@@ -67,15 +162,21 @@ public class Repository {
 
     // Behavior: 
     //      - checks if the repository contains a certain commit using its id
+    //      - most ids that aren't in the repository are rejected by the repository's Bloom
+    //      - filter without walking the commits
     // Parameter:
     //      - 'targetId': the id of the commit that we want to check for in the repository
     // Returns: 
     //      - boolean: true if the commit with the corresponding id is contained within the
     //      - repository and false if it isn't contained in the repository
     public boolean contains(String targetId) {
+        if (targetId == null || !filter().mightContain(targetId)) {
+            return false;
+        }
+
         Commit tempReference = repositoryHead;
 
-        while (tempReference != null) {
+        for (int i = 0; i < size; i++) {
             if (tempReference.id.equals(targetId)) {
                 return true;
             }
@@ -91,6 +192,9 @@ public class Repository {
     //      - on the number of commits that the client provides they want to see (if that number
     //      - is greater than the size of the repository, then the history representation will
     //      - just include all of the commits in the repository)
+    //      - histories are kept in the repository's cache (see getHistoryCache) until a change
+    //      - to the repository affects them, so reading an unchanged history again is a single
+    //      - lookup
     // Exceptions:
     //      - Throws an IllegalArgumentException if the client enters a number of commits they
     //      - want to see in the history that is less than or equal to zero
@@ -103,17 +207,38 @@ public class Repository {
             throw new IllegalArgumentException();
         }
 
-        String history = "";
-        Commit tempReference = repositoryHead;
+        //every n past the size of the repository gives the same history
+        n = Math.min(n, size);
+        String cached = getHistoryCache().get(n);
+
+        if (cached != null) {
+            return cached;
+        }
 
+        StringBuilder history = new StringBuilder();
+        Commit tempReference = repositoryHead;
 
-        while (tempReference != null && n > 0) {
-            history += tempReference.toString() + "\n";
+        for (int i = 0; i < n; i++) {
+            history.append(tempReference.toString()).append("\n");
             tempReference = tempReference.past;
-            n--;
         }
 
-        return history;
+        String rendered = history.toString();
+        historyCache.put(n, rendered);
+        return rendered;
+    }
+
+    // Behavior: 
+    //      - provides the cache of this repository's rendered histories (for example to read
+    //      - how many lookups it answered), creating it the first time it is needed
+    // Returns: 
+    //      - HistoryCache: the repository's history cache
+    public HistoryCache getHistoryCache() {
+        if (historyCache == null) {
+            historyCache = new HistoryCache(HISTORY_CACHE_CHARS);
+        }
+
+        return historyCache;
     }
 
     // Behavior: 
@@ -123,14 +248,35 @@ public class Repository {
     // Returns: 
     //      - String: the id of the most recent created commit 
     public String commit(String message) {
+        Change change = beginChange(null);
+        invalidateHistory(0);
         Commit newHead = new Commit(message, repositoryHead);
         repositoryHead = newHead;
         size++;
+        ownedCount++;
+
+        if (repositoryTail == null) {
+            repositoryTail = newHead;
+        }
+
+        if (change != null) {
+            change.recordCommits(this, size - 1, Collections.emptyList(),
+                                 Collections.singletonList(newHead));
+        }
+
+        editableTimeline().addNewest(newHead);
+
+        if (filter != null) {
+            filter.add(newHead.id);
+        }
+
+        endChange(change, null);
         return repositoryHead.id;
     }
 
     // Behavior: 
-    //      - removes a commit from the repository if the commit is present
+    //      - removes a commit from the repository if the commit is present (most ids that
+    //      - aren't in the repository are rejected by its Bloom filter without a search)
     // Parameter:
     //      - 'targetId': the id of the commit that we want to remove from the repository
     // Returns: 
@@ -138,87 +284,1085 @@ public class Repository {
     //      - and was removed) and false if the drop was unsuccesful (commit wasn't present in
     //      - the repository so nothing was removed)
     public boolean drop(String targetId) {
-        if (repositoryHead == null) {
+        if (targetId == null || !filter().mightContain(targetId)) {
             return false;
         }
 
-        if (repositoryHead.id.equals(targetId)) {
-            repositoryHead = repositoryHead.past;
-            size--;
-            return true;
-        }
+        TimeIndex commits = timeline;
 
-        Commit tempReference = repositoryHead;
+        for (int i = commits.size() - 1; i >= 0; i--) {
+            if (commits.get(i).id.equals(targetId)) {
+                Change change = beginChange(null);
+                invalidateHistory(commits.size() - 1 - i);
+                ownFrom(i + 1);
+
+                if (i >= commits.size() - ownedCount) {
+                    ownedCount--;
+                }
+
+                Commit dropped = timeline.get(i);
+                replaceCommits(i, i + 1, Collections.emptyList());
+                commits = timeline;
+
+                if (i == commits.size()) {
+                    repositoryHead = i == 0 ? null : dropped.past;
+                } else {
+                    setPast(commits.get(i), i == 0 ? null : dropped.past);
+                }
+
+                if (dropped == repositoryTail) {
+                    repositoryTail = commits.size() == 0 ? null : commits.get(0);
+                }
 
-        while (tempReference.past != null) {
-            if (tempReference.past.id.equals(targetId)) {
-                tempReference.past = tempReference.past.past;
                 size--;
+                staleCount++;
+                endChange(change, null);
                 return true;
             }
-
-            tempReference = tempReference.past;
         }
 
         return false;
     }
 
+    // Behavior: 
+    //      - removes the 'k' oldest commits from the repository (every commit if the
+    //      - repository has 'k' or fewer commits) without walking the commit chain (the time
+    //      - index just moves past the removed commits, so this takes time in O(k))
+    //      - the new oldest commit is unlinked from the removed commits only if no fork shares
+    //      - it, since unlinking a shared commit would mean copying it and every commit above
+    //      - it: otherwise the link is left in place (walks of the chain stop after 'size'
+    //      - commits), so trimming a fork takes time in O(k) too
+    // Exceptions:
+    //      - Throws an IllegalArgumentException if the client enters a number of commits to
+    //      - remove that is less than or equal to zero
+    // Parameter:
+    //      - 'k': the number of oldest commits that the client wants to remove
+    // Returns: 
+    //      - int: the number of commits that were removed
+    public int dropOldest(int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException();
+        }
+
+        if (size == 0) {
+            return 0;
+        }
+
+        int removed = Math.min(k, size);
+        Change change = beginChange(null);
+
+        if (removed == size) {
+            repositoryHead = null;
+            repositoryTail = null;
+        } else {
+            repositoryTail = timeline.get(removed);
+
+            if (removed >= size - ownedCount) {
+                setPast(repositoryTail, null);
+            }
+        }
+
+        replaceCommits(0, removed, Collections.emptyList());
+        size -= removed;
+        invalidateHistory(size);
+        staleCount += removed;
+        ownedCount = Math.min(ownedCount, size);
+        endChange(change, null);
+        return removed;
+    }
+
     // Behavior: 
     //      - combines another repository with this repository by adding all the
     //      - commits from the other repository into this repository and ordering them by
     //      - which one is most recent (the other repository is empty after this action)
+    //      - only the stretch of this repository that overlaps the other repository in time
+    //      - is relinked: the insertion window is found by binary searching the time index,
+    //      - so commits that are newer or older than everything in the other repository are
+    //      - never walked (appending an entirely older repository only relinks its newest
+    //      - commit)
+    //      - the time index has free room at both ends, so splicing the merged window into it
+    //      - only moves the commits on the shorter side of the window: in total this takes
+    //      - time in O(|other| + log |this| + min(commits older than the window, commits more
+    //      - recent than the window)), which is O(|other| + log |this|) when the other
+    //      - repository is entirely older or more recent than this one
+    //      - commits are ordered by their hybrid logical clock readings (Commit.order), which
+    //      - never tie for commits made in this program, so the result doesn't depend on how
+    //      - many commits were made within the same millisecond (if readings do tie, the commit
+    //      - already in this repository is treated as the more recent one)
+    //      - a commit that both repositories hold (such as a commit made before one of them
+    //      - was forked from the other) is only kept once
     // Parameter:
     //      - 'other': the repository whose commits we want to combine into this repository (we
     //                  are assuming that other is non-null)
     public void synchronize(Repository other) {
-        if (this.repositoryHead != null && other.repositoryHead != null) {
-            Commit iterationReference = this.repositoryHead; //iterates in this repository
-            Commit priorIterationReference = iterationReference;//adds commits to this repository
-            this.size += other.size;
-
-            //Comparing head values separate from the rest and readjusting if needed
-            if (other.repositoryHead.timeStamp > this.repositoryHead.timeStamp) {
-                this.repositoryHead = other.repositoryHead;
-                other.repositoryHead = other.repositoryHead.past;
-                this.repositoryHead.past = iterationReference;
-                priorIterationReference = this.repositoryHead;
+        if (other.repositoryHead == null) {
+            return;
+        }
+
+        Change change = beginChange(other);
+        if (this.repositoryHead == null) {
+            this.repositoryHead = other.repositoryHead;
+            this.repositoryTail = other.repositoryTail;
+            this.size = other.size;
+            this.ownedCount = other.ownedCount;
+            this.replaceCommits(0, 0, other.timeline.list(0, other.size));
+            this.filter = other.filter;
+            this.staleCount = other.staleCount;
+            invalidateHistory(0);
+        } else {
+            TimeIndex commits = this.timeline;
+            TimeIndex otherCommits = other.timeline;
+
+            //[start, end) is the part of this repository that interleaves with the other one
+            int start = firstAtOrAfter(commits, otherCommits.get(0).order);
+            int end = firstAtOrAfter(commits, other.repositoryHead.order + 1);
+            invalidateHistory(commits.size() - end);
+            this.ownFrom(start);
+            other.ownFrom(0);
+            commits = this.timeline;
+            otherCommits = other.timeline;
+            List<Commit> merged = mergeOldestFirst(commits, start, end, otherCommits);
+            int shared = end - start + otherCommits.size() - merged.size();
+
+            Commit below = start > 0 ? commits.get(start - 1) : null;
+            if (start == 0) {
+                this.repositoryTail = merged.get(0);
             }
 
-            while (iterationReference != null && other.repositoryHead != null) {
-                if (iterationReference.timeStamp > other.repositoryHead.timeStamp) {
-
-                    //end of the current repository but the other one still has more commits
-                    if (iterationReference.past == null) {
-                        iterationReference.past = other.repositoryHead;
-                        other.repositoryHead = null;
-                    } else {
-                        iterationReference = iterationReference.past;
-
-                        //to make sure that iteration and priorIteration don't refer to the same
-                        //thing while iterating
-                        if (iterationReference.equals(priorIterationReference.past.past)) {
-                            priorIterationReference = priorIterationReference.past;
-                        }
-                    }   
+            if (start == end) {
+                //other fits entirely in a gap, so its own links are already correct
+                setPast(merged.get(0), below);
+            } else {
+                for (Commit commit : merged) {
+                    setPast(commit, below);
+                    below = commit;
                 }
+            }
 
-                if (other.repositoryHead != null && 
-                        other.repositoryHead.timeStamp > iterationReference.timeStamp) {
-                    priorIterationReference.past = other.repositoryHead;
-                    other.repositoryHead = other.repositoryHead.past;
-                    priorIterationReference.past.past = iterationReference;
-                    priorIterationReference = priorIterationReference.past;
+            Commit newest = merged.get(merged.size() - 1);
+            if (end < commits.size()) {
+                setPast(commits.get(end), newest);
+            } else {
+                this.repositoryHead = newest;
+            }
 
+            if (this.filter != null) {
+                for (int i = 0; i < otherCommits.size(); i++) {
+                    this.filter.add(otherCommits.get(i).id);
                 }
             }
-        //nothing inside of current repository but other repository has commits
-        } else if (this.repositoryHead == null && other.repositoryHead != null) {
-            this.repositoryHead = other.repositoryHead;
-            other.repositoryHead = null;
-            this.size = other.size;
+
+            this.replaceCommits(start, end, merged);
+            this.size += other.size - shared;
+            this.ownedCount = this.size - start;
         }
 
+        other.replaceCommits(0, other.size, Collections.emptyList());
+        other.repositoryHead = null;
+        other.repositoryTail = null;
+        other.filter = null;
         other.size = 0;
+        other.ownedCount = 0;
+        other.invalidateHistory(0);
+        endChange(change, other);
+    }
+
+    // Behavior: 
+    //      - creates a new repository with the given name that contains the same commits
+    //      - (same ids, messages and timestamps) as this repository without copying them:
+    //      - both repositories share the commit chain, and a shared commit is only copied
+    //      - when a drop or synchronize in one of the repositories needs to change it, so
+    //      - the other repository never sees the change
+    //      - the repositories also share their time index and Bloom filter, so the first
+    //      - commit to either of them copies only a small part of the index, and the fork can
+    //      - reject missing ids without walking its commits
+    // Exceptions:
+    //      - Throws an IllegalArgumentException if the client enters a name that is empty
+    //      - or the provided name is null
+    // Parameter:
+    //      - 'newName': the name of the created repository
+    // Returns: 
+    //      - Repository: the new repository
+    public Repository fork(String newName) {
+        Repository forked = new Repository(newName);
+        forked.repositoryHead = repositoryHead;
+        forked.repositoryTail = repositoryTail;
+        forked.size = size;
+
+        //the fork starts with the same time index, whose directory is copied by whichever
+        //repository changes it first (and whose chunks are copied as they are written)
+        forked.timeline = timeline;
+        timeline.share();
+
+        //a Bloom filter only ever gains ids, so a filter shared by both repositories still
+        //holds every id of each of them
+        forked.filter = filter;
+        forked.staleCount = staleCount;
+
+        //every commit made so far is now reachable from both repositories, so changes that
+        //were journaled before the fork (here, or in a repository that synchronized this one)
+        //can no longer be rewound in place
+        ownedCount = 0;
+        modCount++;
+        undoJournal.clear();
+        redoJournal.clear();
+        return forked;
+    }
+
+    // Behavior: 
+    //      - reverts the most recent commit, drop, dropOldest or synchronize that hasn't been
+    //      - undone yet (a synchronize also gives the other repository its commits back) by
+    //      - restoring only the links, time index positions and fields that the change touched
+    // Exceptions:
+    //      - Throws an IllegalStateException if the change was a synchronize and the other
+    //      - repository has been changed since then (the change can't be undone anymore, and
+    //      - neither can the changes before it, so the journal is emptied)
+    // Returns: 
+    //      - boolean: true if a change was undone and false if there was nothing to undo
+    public boolean undo() {
+        Change change = undoJournal.peekFirst();
+
+        if (change == null) {
+            return false;
+        }
+
+        if (change.isStale()) {
+            undoJournal.clear();
+            throw new IllegalStateException();
+        }
+
+        change.revert();
+        undoJournal.removeFirst();
+        redoJournal.addFirst(change);
+        return true;
+    }
+
+    // Behavior: 
+    //      - applies the most recently undone change again (only possible if this repository
+    //      - hasn't been changed since that undo)
+    // Exceptions:
+    //      - Throws an IllegalStateException if the change was a synchronize and the other
+    //      - repository has been changed since it was undone (the change can't be redone
+    //      - anymore, and neither can the changes undone before it, so they are forgotten)
+    // Returns: 
+    //      - boolean: true if a change was redone and false if there was nothing to redo
+    public boolean redo() {
+        Change change = redoJournal.peekFirst();
+
+        if (change == null) {
+            return false;
+        }
+
+        if (change.isStale()) {
+            redoJournal.clear();
+            throw new IllegalStateException();
+        }
+
+        change.reapply();
+        redoJournal.removeFirst();
+        undoJournal.addFirst(change);
+        return true;
+    }
+
+    // Behavior: 
+    //      - starts journaling a change to this repository (and to 'other' if the change is a
+    //      - synchronize), remembering the state of both repositories before the change
+    //      - (nothing is journaled if this repository can't undo any changes)
+    // Parameter:
+    //      - 'other': the other repository taking part in the change (null if there is none)
+    // Returns: 
+    //      - Change: the journal entry that the change will be recorded into (null if the
+    //      - change isn't journaled)
+    private Change beginChange(Repository other) {
+        if (journalDepth == 0) {
+            return null;
+        }
+
+        Change change = new Change(this, other);
+        pending = change;
+
+        if (other != null) {
+            other.pending = change;
+        }
+
+        return change;
+    }
+
+    // Behavior: 
+    //      - finishes a change, remembering the state of the repositories after the change
+    //      - and adding it to the (bounded) undo journal if it was journaled
+    // Parameters:
+    //      - 'change': the journal entry returned by beginChange (null if not journaled)
+    //      - 'other': the other repository taking part in the change (null if there is none)
+    private void endChange(Change change, Repository other) {
+        modCount++;
+        redoJournal.clear();
+
+        if (other != null) {
+            other.modCount++;
+
+            //the other repository's commits now belong to this repository
+            other.undoJournal.clear();
+            other.redoJournal.clear();
+        }
+
+        if (change == null) {
+            return;
+        }
+
+        pending = null;
+        change.repositoryAfter = new State(this);
+
+        if (other != null) {
+            other.pending = null;
+            change.otherAfter = new State(other);
+            change.otherModCount = other.modCount;
+        }
+
+        undoJournal.addFirst(change);
+        if (undoJournal.size() > journalDepth) {
+            undoJournal.removeLast();
+        }
+    }
+
+    // Behavior: 
+    //      - forgets the cached histories that show more than the given number of commits
+    // Parameter:
+    //      - 'unchanged': the number of most recent commits that are the same as before
+    private void invalidateHistory(int unchanged) {
+        if (historyCache != null) {
+            historyCache.invalidate(unchanged);
+        }
+    }
+
+    // Behavior: 
+    //      - changes the commit before a given commit, recording the change in the journal
+    //      - entry that is currently being recorded
+    // Parameters:
+    //      - 'commit': the commit whose previous commit changes
+    //      - 'past': the new previous commit
+    private void setPast(Commit commit, Commit past) {
+        if (pending != null) {
+            pending.record(commit, past);
+        }
+
+        commit.past = past;
+    }
+
+    // Behavior: 
+    //      - replaces the commits at positions [start, end) of the time index with the given
+    //      - commits, recording the change in the journal entry that is currently being
+    //      - recorded
+    // Parameters:
+    //      - 'start': the position of the first commit to replace
+    //      - 'end': the position just past the last commit to replace
+    //      - 'added': the commits to put in their place, from oldest to most recent
+    private void replaceCommits(int start, int end, List<Commit> added) {
+        TimeIndex commits = editableTimeline();
+
+        if (pending != null) {
+            pending.recordCommits(this, start, commits.list(start, end), added);
+        }
+
+        commits.replace(start, end, added);
+    }
+
+    // Behavior: 
+    //      - makes sure that every commit at or after the given position of the time index is
+    //      - only reachable from this repository (so that it can safely be changed), copying
+    //      - the commits that are still shared with a fork
+    // Parameter:
+    //      - 'index': position in the time index of the oldest commit that will be changed
+    private void ownFrom(int index) {
+        TimeIndex commits = timeline;
+        int firstOwned = commits.size() - ownedCount;
+
+        if (index >= firstOwned) {
+            return;
+        }
+
+        List<Commit> copies = new ArrayList<>(firstOwned - index);
+        Commit below = index > 0 ? commits.get(index - 1) : null;
+        for (int i = index; i < firstOwned; i++) {
+            Commit copy = new Commit(commits.get(i), below);
+            copies.add(copy);
+            below = copy;
+        }
+
+        replaceCommits(index, firstOwned, copies);
+        commits = timeline;
+
+        if (firstOwned < commits.size()) {
+            setPast(commits.get(firstOwned), below);
+        } else {
+            repositoryHead = below;
+        }
+
+        if (index == 0) {
+            repositoryTail = commits.get(0);
+        }
+
+        ownedCount = commits.size() - index;
+    }
+
+    // Behavior: 
+    //      - provides the time index of the repository so that it can be changed, first
+    //      - copying its directory if it is still shared with a fork
+    // Returns: 
+    //      - TimeIndex: the repository's own time index
+    private TimeIndex editableTimeline() {
+        TimeIndex commits = timeline;
+
+        if (commits.holders > 1) {
+            commits.holders--;
+            timeline = commits.copy();
+        }
+
+        return timeline;
+    }
+
+    // Behavior: 
+    //      - provides the Bloom filter of the ids in the repository, rebuilding it when it
+    //      - hasn't been built yet, when it has grown past the number of ids it was sized for,
+    //      - or when most of the ids in it have been dropped from the repository
+    // Returns: 
+    //      - BloomFilter: a filter that contains (at least) every id in the repository
+    private BloomFilter filter() {
+        if (filter == null || filter.isFull() || staleCount > size) {
+            filter = new BloomFilter(2 * size);
+            staleCount = 0;
+            Commit tempReference = repositoryHead;
+
+            for (int i = 0; i < size; i++) {
+                filter.add(tempReference.id);
+                tempReference = tempReference.past;
+            }
+        }
+
+        return filter;
+    }
+
+    // Behavior: 
+    //      - binary searches a time index for the oldest commit whose clock reading is at
+    //      - or after the given reading
+    // Parameters:
+    //      - 'commits': commits ordered from oldest to most recent
+    //      - 'order': the clock reading (see Commit.order) to search for
+    // Returns: 
+    //      - int: index of the first such commit (commits.size() if every commit is older)
+    private static int firstAtOrAfter(TimeIndex commits, long order) {
+        int low = 0;
+        int high = commits.size();
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (commits.get(middle).order < order) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    // Behavior: 
+    //      - merges a window of this repository's time index with all of another time index
+    //      - into one list ordered from oldest to most recent, placing commits from 'ours'
+    //      - after commits from 'theirs' when their clock readings tie (a commit that is in
+    //      - both, with the same id and clock reading, is only added once, from 'ours')
+    // Parameters:
+    //      - 'ours': the time index of this repository
+    //      - 'start': the position of the oldest commit of the window
+    //      - 'end': the position just past the most recent commit of the window
+    //      - 'theirs': the time index of the other repository
+    // Returns: 
+    //      - List<Commit>: the merged commits ordered from oldest to most recent
+    private static List<Commit> mergeOldestFirst(TimeIndex ours, int start, int end,
+                                                 TimeIndex theirs) {
+        List<Commit> merged = new ArrayList<>(end - start + theirs.size());
+        int i = start;
+        int j = 0;
+
+        while (i < end && j < theirs.size()) {
+            Commit our = ours.get(i);
+            Commit their = theirs.get(j);
+
+            if (our.order == their.order && our.id.equals(their.id)) {
+                merged.add(our);
+                i++;
+                j++;
+            } else if (our.order < their.order) {
+                merged.add(ours.get(i++));
+            } else {
+                merged.add(theirs.get(j++));
+            }
+        }
+
+        while (i < end) {
+            merged.add(ours.get(i++));
+        }
+
+        while (j < theirs.size()) {
+            merged.add(theirs.get(j++));
+        }
+
+        return merged;
+    }
+
+    //Represents the time index of a repository: its commits from oldest to most recent. The
+    //positions of the index are split into fixed size chunks, held by a directory with free room
+    //at both ends, so that commits can be added or removed at either end (or a stretch of them
+    //replaced anywhere) by moving only the commits on the shorter side of the change. An index
+    //can be shared by a repository and its forks until one of them changes it (see
+    //editableTimeline). The one that changes it copies only the directory, and then copies a
+    //chunk the first time it writes to it, so committing to a fork of a repository with
+    //millions of commits copies a few thousand references instead of the whole index.
+    private static class TimeIndex {
+        private static final int CHUNK_BITS = 10;
+        private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+        private static final int MINIMUM_CHUNKS = 2;
+
+        private Commit[][] chunks;
+        private Object[] chunkOwners;
+        private Object owner;
+        private int first;
+        private int size;
+        private int holders;
+
+        // Behavior: 
+        //      - creates an empty index
+        private TimeIndex() {
+            chunks = new Commit[MINIMUM_CHUNKS][];
+            chunkOwners = new Object[MINIMUM_CHUNKS];
+            owner = new Object();
+            first = MINIMUM_CHUNKS * CHUNK_SIZE / 2;
+            holders = 1;
+        }
+
+        // Behavior: 
+        //      - provides the number of commits in the index
+        // Returns: 
+        //      - int: number of commits
+        private int size() {
+            return size;
+        }
+
+        // Behavior: 
+        //      - provides the commit at a position of the index (0 is the oldest commit)
+        // Parameter:
+        //      - 'index': the position of the commit
+        // Returns: 
+        //      - Commit: the commit at that position
+        private Commit get(int index) {
+            int position = first + index;
+            return chunks[position >>> CHUNK_BITS][position & (CHUNK_SIZE - 1)];
+        }
+
+        // Behavior: 
+        //      - adds a commit to the index as its most recent commit
+        // Parameter:
+        //      - 'commit': the commit to add
+        private void addNewest(Commit commit) {
+            if (first + size == capacity()) {
+                grow(1);
+            }
+
+            set(first + size, commit);
+            size++;
+        }
+
+        // Behavior: 
+        //      - provides a copy of the commits at positions [start, end)
+        // Parameters:
+        //      - 'start': the position of the first commit
+        //      - 'end': the position just past the last commit
+        // Returns: 
+        //      - List<Commit>: the commits from oldest to most recent
+        private List<Commit> list(int start, int end) {
+            List<Commit> commits = new ArrayList<>(end - start);
+
+            for (int i = start; i < end; i++) {
+                commits.add(get(i));
+            }
+
+            return commits;
+        }
+
+        // Behavior: 
+        //      - replaces the commits at positions [start, end) with the given commits, moving
+        //      - whichever side of that stretch holds fewer commits (so removing the oldest
+        //      - commits just moves the start of the index past them)
+        // Parameters:
+        //      - 'start': the position of the first commit to replace
+        //      - 'end': the position just past the last commit to replace
+        //      - 'added': the commits to put in their place, from oldest to most recent
+        private void replace(int start, int end, List<Commit> added) {
+            int shift = added.size() - (end - start);
+
+            if (start < size - end) {
+                //move the older commits
+                if (shift > first) {
+                    grow(shift);
+                }
+
+                move(first, first - shift, start);
+                first -= shift;
+                size += shift;
+                if (shift < 0) {
+                    release(first + shift, first);
+                }
+            } else {
+                //move the more recent commits
+                if (first + size + shift > capacity()) {
+                    grow(shift);
+                }
+
+                move(first + end, first + end + shift, size - end);
+                size += shift;
+                if (shift < 0) {
+                    release(first + size, first + size - shift);
+                }
+            }
+
+            for (int i = 0; i < added.size(); i++) {
+                set(first + start + i, added.get(i));
+            }
+        }
+
+        // Behavior: 
+        //      - lets another repository (a fork) hold this index too: from now on, neither
+        //      - of them may write to the chunks in place
+        private void share() {
+            holders++;
+            owner = new Object();
+        }
+
+        // Behavior: 
+        //      - provides a copy of the index that can be changed without affecting this one
+        //      - (only the directory is copied: the copy shares every chunk until it writes
+        //      - to it)
+        // Returns: 
+        //      - TimeIndex: the copy
+        private TimeIndex copy() {
+            TimeIndex copy = new TimeIndex();
+            copy.chunks = chunks.clone();
+            copy.chunkOwners = new Object[chunks.length];
+            copy.first = first;
+            copy.size = size;
+            return copy;
+        }
+
+        // Behavior: 
+        //      - provides the number of positions that the directory has room for
+        // Returns: 
+        //      - int: number of positions
+        private int capacity() {
+            return chunks.length << CHUNK_BITS;
+        }
+
+        // Behavior: 
+        //      - puts a commit at an absolute position of the directory
+        // Parameters:
+        //      - 'position': the absolute position
+        //      - 'commit': the commit to put there
+        private void set(int position, Commit commit) {
+            writableChunk(position >>> CHUNK_BITS)[position & (CHUNK_SIZE - 1)] = commit;
+        }
+
+        // Behavior: 
+        //      - moves the commits at the absolute positions [from, from + count) to
+        //      - [to, to + count) (the two stretches may overlap)
+        // Parameters:
+        //      - 'from': the absolute position of the first commit to move
+        //      - 'to': the absolute position to move it to
+        //      - 'count': the number of commits to move
+        private void move(int from, int to, int count) {
+            if (to < from) {
+                for (int moved = 0; moved < count; ) {
+                    int source = from + moved;
+                    int target = to + moved;
+                    int length = Math.min(count - moved,
+                            CHUNK_SIZE - Math.max(source & (CHUNK_SIZE - 1),
+                                                  target & (CHUNK_SIZE - 1)));
+
+                    System.arraycopy(chunks[source >>> CHUNK_BITS], source & (CHUNK_SIZE - 1),
+                                     writableChunk(target >>> CHUNK_BITS),
+                                     target & (CHUNK_SIZE - 1), length);
+                    moved += length;
+                }
+            } else if (to > from) {
+                //move the most recent commits first, so none is overwritten before it moves
+                for (int left = count; left > 0; ) {
+                    int sourceEnd = from + left;
+                    int targetEnd = to + left;
+                    int length = Math.min(left,
+                            1 + Math.min((sourceEnd - 1) & (CHUNK_SIZE - 1),
+                                         (targetEnd - 1) & (CHUNK_SIZE - 1)));
+                    int source = sourceEnd - length;
+                    int target = targetEnd - length;
+
+                    System.arraycopy(chunks[source >>> CHUNK_BITS], source & (CHUNK_SIZE - 1),
+                                     writableChunk(target >>> CHUNK_BITS),
+                                     target & (CHUNK_SIZE - 1), length);
+                    left -= length;
+                }
+            }
+        }
+
+        // Behavior: 
+        //      - forgets the commits at the absolute positions [from, to), which are no longer
+        //      - part of the index: chunks left without any commit of the index are dropped,
+        //      - and the positions are cleared in the other chunks that this index owns (a
+        //      - chunk it shares is left as it is, since a fork still holds its commits)
+        // Parameters:
+        //      - 'from': the first absolute position to forget
+        //      - 'to': the absolute position just past the last one to forget
+        private void release(int from, int to) {
+            for (int chunk = from >>> CHUNK_BITS; chunk <= (to - 1) >>> CHUNK_BITS; chunk++) {
+                int chunkStart = chunk << CHUNK_BITS;
+
+                if (chunkStart + CHUNK_SIZE <= first || chunkStart >= first + size) {
+                    chunks[chunk] = null;
+                    chunkOwners[chunk] = null;
+                } else if (chunkOwners[chunk] == owner) {
+                    Arrays.fill(chunks[chunk], Math.max(from, chunkStart) - chunkStart,
+                                Math.min(to, chunkStart + CHUNK_SIZE) - chunkStart, null);
+                }
+            }
+        }
+
+        // Behavior: 
+        //      - provides a chunk that this index may write to, creating it if it doesn't
+        //      - exist yet and copying it if it may still be held by a fork
+        // Parameter:
+        //      - 'chunk': the position of the chunk in the directory
+        // Returns: 
+        //      - Commit[]: the chunk
+        private Commit[] writableChunk(int chunk) {
+            if (chunks[chunk] == null) {
+                chunks[chunk] = new Commit[CHUNK_SIZE];
+                chunkOwners[chunk] = owner;
+            } else if (chunkOwners[chunk] != owner) {
+                chunks[chunk] = chunks[chunk].clone();
+                chunkOwners[chunk] = owner;
+            }
+
+            return chunks[chunk];
+        }
+
+        // Behavior: 
+        //      - moves the chunks into a new directory with at least the given amount of free
+        //      - room at both ends (the directory is sized from the chunks in use, so growing
+        //      - is rare, and a directory that trimming has mostly emptied shrinks again)
+        // Parameter:
+        //      - 'room': the number of free positions needed at either end
+        private void grow(int room) {
+            int firstChunk = first >>> CHUNK_BITS;
+            int used = ((first + size + CHUNK_SIZE - 1) >>> CHUNK_BITS) - firstChunk;
+            int roomChunks = (room + CHUNK_SIZE - 1) / CHUNK_SIZE + 1;
+            int length = Math.max(MINIMUM_CHUNKS, 2 * used + 2 * roomChunks);
+            int grownFirstChunk = (length - used) / 2;
+            Commit[][] grown = new Commit[length][];
+            Object[] grownOwners = new Object[length];
+
+            System.arraycopy(chunks, firstChunk, grown, grownFirstChunk, used);
+            System.arraycopy(chunkOwners, firstChunk, grownOwners, grownFirstChunk, used);
+            chunks = grown;
+            chunkOwners = grownOwners;
+            first += (grownFirstChunk - firstChunk) << CHUNK_BITS;
+        }
+    }
+
+    //Represents a set of commit ids that can answer "definitely not present" quickly: an id
+    //that was added is always reported as possibly present, while an id that wasn't added is
+    //reported as possibly present only about 1% of the time (until more ids than the filter
+    //was sized for are added)
+    private static class BloomFilter {
+        private static final int BITS_PER_ID = 10;
+        private static final int HASHES = 7;
+        private static final int MINIMUM_CAPACITY = 64;
+
+        private final long[] bits;
+        private final int bitCount;
+        private final int capacity;
+        private int count;
+
+        // Behavior: 
+        //      - creates an empty filter sized for the given number of ids
+        // Parameter:
+        //      - 'capacity': the number of ids the filter is sized for
+        private BloomFilter(int capacity) {
+            this.capacity = Math.max(capacity, MINIMUM_CAPACITY);
+            this.bits = new long[(int) (((long) this.capacity * BITS_PER_ID + 63) / 64)];
+            this.bitCount = bits.length * 64;
+        }
+
+        // Behavior: 
+        //      - adds an id to the filter
+        // Parameter:
+        //      - 'id': the id to add
+        private void add(String id) {
+            int hash = mix(id.hashCode());
+            int step = mix(hash) | 1;
+
+            for (int i = 0; i < HASHES; i++) {
+                int bit = Math.floorMod(hash + i * step, bitCount);
+                bits[bit >>> 6] |= 1L << bit;
+            }
+
+            count++;
+        }
+
+        // Behavior: 
+        //      - checks if an id may have been added to the filter
+        // Parameter:
+        //      - 'id': the id to check for
+        // Returns: 
+        //      - boolean: false if the id was definitely never added and true otherwise
+        private boolean mightContain(String id) {
+            int hash = mix(id.hashCode());
+            int step = mix(hash) | 1;
+
+            for (int i = 0; i < HASHES; i++) {
+                int bit = Math.floorMod(hash + i * step, bitCount);
+
+                if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        // Behavior: 
+        //      - checks if more ids have been added than the filter was sized for
+        // Returns: 
+        //      - boolean: true if the filter should be rebuilt with a larger size
+        private boolean isFull() {
+            return count > capacity;
+        }
+
+        // Behavior: 
+        //      - spreads the bits of a hash code (the finalizer of MurmurHash3)
+        // Parameter:
+        //      - 'hash': the hash code to spread
+        // Returns: 
+        //      - int: the spread hash code
+        private static int mix(int hash) {
+            hash ^= hash >>> 16;
+            hash *= 0x85ebca6b;
+            hash ^= hash >>> 13;
+            hash *= 0xc2b2ae35;
+            hash ^= hash >>> 16;
+            return hash;
+        }
+    }
+
+    //Represents a journaled change to one repository (or two, for a synchronize): the links
+    //and time index stretches that the change rewrote and the state of each repository before
+    //and after the change
+    private static class Change {
+        private final Repository repository;
+        private final Repository other;
+        private final State repositoryBefore;
+        private final State otherBefore;
+        private State repositoryAfter;
+        private State otherAfter;
+        private int otherModCount;
+        private List<Commit> commits;
+        private List<Commit> oldPasts;
+        private List<Commit> newPasts;
+        private List<IndexChange> indexChanges;
+
+        // Behavior: 
+        //      - creates an empty journal entry, remembering the current state of the
+        //      - repositories taking part in the change
+        // Parameters:
+        //      - 'repository': the repository being changed
+        //      - 'other': the other repository taking part in the change (null if none)
+        private Change(Repository repository, Repository other) {
+            this.repository = repository;
+            this.other = other;
+            this.repositoryBefore = new State(repository);
+            this.otherBefore = other == null ? null : new State(other);
+        }
+
+        // Behavior: 
+        //      - records that the previous commit of a commit is about to change (the lists of
+        //      - changed links are only created once there is a link to record, since a
+        //      - commit doesn't change any)
+        // Parameters:
+        //      - 'commit': the commit whose previous commit changes
+        //      - 'past': the new previous commit
+        private void record(Commit commit, Commit past) {
+            if (commits == null) {
+                commits = new ArrayList<>();
+                oldPasts = new ArrayList<>();
+                newPasts = new ArrayList<>();
+            }
+
+            commits.add(commit);
+            oldPasts.add(commit.past);
+            newPasts.add(past);
+        }
+
+        // Behavior: 
+        //      - puts the repositories back in the state they were in before the change
+        private void revert() {
+            for (int i = linkCount() - 1; i >= 0; i--) {
+                commits.get(i).past = oldPasts.get(i);
+            }
+
+            for (int i = indexChangeCount() - 1; i >= 0; i--) {
+                IndexChange change = indexChanges.get(i);
+                change.replace(change.added, change.removed);
+            }
+
+            repositoryBefore.restore(repository);
+            restoreOther(otherBefore);
+        }
+
+        // Behavior: 
+        //      - puts the repositories back in the state they were in after the change
+        private void reapply() {
+            for (int i = 0; i < linkCount(); i++) {
+                commits.get(i).past = newPasts.get(i);
+            }
+
+            for (int i = 0; i < indexChangeCount(); i++) {
+                IndexChange change = indexChanges.get(i);
+                change.replace(change.removed, change.added);
+            }
+
+            repositoryAfter.restore(repository);
+            restoreOther(otherAfter);
+        }
+
+        // Behavior: 
+        //      - records that commits of a repository's time index are about to be replaced
+        // Parameters:
+        //      - 'repository': the repository whose time index changes
+        //      - 'start': the position of the first replaced commit
+        //      - 'removed': the commits being replaced
+        //      - 'added': the commits put in their place
+        private void recordCommits(Repository repository, int start, List<Commit> removed,
+                                   List<Commit> added) {
+            if (indexChanges == null) {
+                indexChanges = new ArrayList<>();
+            }
+
+            indexChanges.add(new IndexChange(repository, start, removed, added));
+        }
+
+        // Behavior: 
+        //      - provides the number of links that the change rewrote
+        // Returns: 
+        //      - int: number of rewritten links
+        private int linkCount() {
+            return commits == null ? 0 : commits.size();
+        }
+
+        // Behavior: 
+        //      - provides the number of changes to time indexes that the change made
+        // Returns: 
+        //      - int: number of time index changes
+        private int indexChangeCount() {
+            return indexChanges == null ? 0 : indexChanges.size();
+        }
+
+        // Behavior: 
+        //      - checks if the other repository has been changed since this change last
+        //      - touched it (in which case the change can't be reverted or reapplied)
+        // Returns: 
+        //      - boolean: true if the change can no longer be reverted or reapplied
+        private boolean isStale() {
+            return other != null && other.modCount != otherModCount;
+        }
+
+        // Behavior: 
+        //      - restores the other repository (if there is one) to the given state
+        // Parameter:
+        //      - 'state': the state to restore
+        private void restoreOther(State state) {
+            if (other != null) {
+                state.restore(other);
+                otherModCount = other.modCount;
+            }
+        }
+    }
+
+    //Represents a stretch of a repository's time index that a change replaced
+    private static class IndexChange {
+        private final Repository repository;
+        private final int start;
+        private final List<Commit> removed;
+        private final List<Commit> added;
+
+        // Behavior: 
+        //      - remembers a replaced stretch of a time index
+        // Parameters:
+        //      - 'repository': the repository whose time index changed
+        //      - 'start': the position of the first replaced commit
+        //      - 'removed': the commits that were replaced
+        //      - 'added': the commits that were put in their place
+        private IndexChange(Repository repository, int start, List<Commit> removed,
+                            List<Commit> added) {
+            this.repository = repository;
+            this.start = start;
+            this.removed = removed;
+            this.added = added;
+        }
+
+        // Behavior: 
+        //      - replaces one side of the change with the other in the time index
+        // Parameters:
+        //      - 'current': the commits that are in the time index now
+        //      - 'wanted': the commits to put in their place
+        private void replace(List<Commit> current, List<Commit> wanted) {
+            repository.editableTimeline().replace(start, start + current.size(), wanted);
+        }
+    }
+
+    //Represents the fields of a repository that a change can affect (a Bloom filter only ever
+    //gains ids, so the filter a repository had at any point still holds every id it had then)
+    private static class State {
+        private final Commit head;
+        private final Commit tail;
+        private final int size;
+        private final int ownedCount;
+        private final BloomFilter filter;
+        private final int staleCount;
+
+        // Behavior: 
+        //      - remembers the current state of a repository
+        // Parameter:
+        //      - 'repository': the repository whose state is remembered
+        private State(Repository repository) {
+            this.head = repository.repositoryHead;
+            this.tail = repository.repositoryTail;
+            this.size = repository.size;
+            this.ownedCount = repository.ownedCount;
+            this.filter = repository.filter;
+            this.staleCount = repository.staleCount;
+        }
+
+        // Behavior: 
+        //      - puts a repository back in this state (its time index is restored separately,
+        //      - by the change that holds this state)
+        // Parameter:
+        //      - 'repository': the repository to restore
+        private void restore(Repository repository) {
+            repository.repositoryHead = head;
+            repository.repositoryTail = tail;
+            repository.size = size;
+            repository.ownedCount = ownedCount;
+            repository.filter = filter;
+            repository.staleCount = staleCount;
+            repository.modCount++;
+            repository.invalidateHistory(0);
+        }
     }
 
     /**
@@ -235,13 +1379,26 @@ public class Repository {
      */
     public static class Commit {
 
-        private static int currentCommitID;
+        private static final int COUNTER_BITS = 20;
+
+        private static final AtomicInteger currentCommitID = new AtomicInteger();
+
+        private static final AtomicLong clock = new AtomicLong();
 
         /**
          * The time, in milliseconds, at which this commit was created.
          */
         public final long timeStamp;
 
+        /**
+         * The hybrid logical clock reading at which this commit was created.
+         * The high bits hold a time in milliseconds and the low 20 bits hold
+         * a counter that separates commits made within the same millisecond.
+         * Every commit gets a larger reading than the commits created before
+         * it, so readings give a total order even when timestamps tie.
+         */
+        public final long order;
+
         /**
          * A unique identifier for this commit.
          */
@@ -265,9 +1422,10 @@ public class Repository {
          *             commit.
          */
         public Commit(String message, Commit past) {
-            this.id = "" + currentCommitID++;
+            this.id = "" + nextId();
             this.message = message;
             this.timeStamp = System.currentTimeMillis();
+            this.order = tick(timeStamp);
             this.past = past;
         }
 
@@ -280,6 +1438,46 @@ public class Repository {
             this(message, null);
         }
 
+        /**
+         * Constructs a commit that was made earlier (for example, one read
+         * back from an exported repository) with its original identifier,
+         * timestamp and clock reading, and no previous commit. Identifiers and
+         * clock readings handed out afterwards are larger than the restored
+         * ones, so they never collide with them.
+         * @param id The commit's unique identifier.
+         * @param message A message describing the changes made in this commit. Should be non-null.
+         * @param timeStamp The time, in milliseconds, at which the commit was created.
+         * @param order The commit's hybrid logical clock reading.
+         */
+        Commit(String id, String message, long timeStamp, long order) {
+            this.id = id;
+            this.message = message;
+            this.timeStamp = timeStamp;
+            this.order = order;
+            clock.accumulateAndGet(order, Math::max);
+
+            try {
+                currentCommitID.accumulateAndGet(Integer.parseInt(id) + 1, Math::max);
+            } catch (NumberFormatException e) {
+                //identifiers that aren't numbers can't collide with generated ones
+            }
+        }
+
+        /**
+         * Constructs a copy of a commit with the same identifier, message,
+         * timestamp and clock reading, but a different previous commit.
+         * @param original The commit to copy.
+         * @param past A reference to the commit made immediately before this
+         *             commit.
+         */
+        private Commit(Commit original, Commit past) {
+            this.id = original.id;
+            this.message = original.message;
+            this.timeStamp = original.timeStamp;
+            this.order = original.order;
+            this.past = past;
+        }
+
         /**
          * Returns a string representation of this commit. The string
          * representation consists of this commit's unique identifier,
@@ -289,6 +1487,19 @@ public class Repository {
          */
         @Override
         public String toString() {
+            return format(id, timeStamp, message);
+        }
+
+        /**
+         * Returns the string representation of a commit with the given
+         * identifier, timestamp and message (see toString). Shared with
+         * repositories that don't store their commits as Commit objects.
+         * @param id The commit's unique identifier.
+         * @param timeStamp The time, in milliseconds, at which the commit was created.
+         * @param message The commit's message.
+         * @return The string representation of the commit.
+         */
+        static String format(String id, long timeStamp, String message) {
             SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd 'at' HH:mm:ss z");
             Date date = new Date(timeStamp);
 
@@ -297,10 +1508,34 @@ public class Repository {
 
         /**
         * Resets the IDs of the commit nodes such that they reset to 0.
-        * Primarily for testing purposes.
+        * Primarily for testing purposes. The clock is never reset, so
+        * readings stay increasing.
         */
         public static void resetIds() {
-            Commit.currentCommitID = 0;
+            Commit.currentCommitID.set(0);
+        }
+
+        /**
+         * Hands out the next unique commit identifier. Shared with
+         * repositories that don't store their commits as Commit objects, so
+         * identifiers stay unique across every kind of repository.
+         * @return An identifier that hasn't been handed out before.
+         */
+        static int nextId() {
+            return currentCommitID.getAndIncrement();
+        }
+
+        /**
+         * Advances the hybrid logical clock: the new reading is the current
+         * time shifted past the counter bits, or one more than the last
+         * reading if that is larger (many commits in one millisecond, or a
+         * wall clock that went backwards).
+         * @param timeStamp The current time, in milliseconds.
+         * @return A reading larger than every reading handed out before.
+         */
+        static long tick(long timeStamp) {
+            long physical = timeStamp << COUNTER_BITS;
+            return clock.updateAndGet(last -> Math.max(last + 1, physical));
         }
     }
 }
@@ -0,0 +1,574 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+//Writes repositories to channels and reads them back, keeping every commit's id, message,
+//millisecond timestamp and clock reading. Commits are streamed from the most recent to the
+//oldest through a fixed size buffer, so memory use doesn't depend on the size of the
+//repository (only on the longest single commit, which is limited to 64 MiB so that a corrupt
+//length can't make a reader run out of memory). Two formats are supported:
+//      - binary: the magic number "MGIT", a format version, then one record per commit made of
+//        its length, timestamp, clock reading, and the length-prefixed UTF-8 id and message
+//      - NDJSON: one JSON object per line, such as
+//        {"id":"3","timeStamp":1700000000000,"order":1782579200000000000,"message":"Fix"}
+public class RepositoryIO {
+
+    private static final int MAGIC = 0x4D474954;
+    private static final byte VERSION = 1;
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final int MINIMUM_RECORD_BYTES = 2 * Long.BYTES + 2 * Integer.BYTES;
+    private static final int MAXIMUM_RECORD_BYTES = 1 << 26;
+
+    // Behavior:
+    //      - writes every commit of a repository to a channel in the binary format
+    // Exceptions:
+    //      - Throws an IOException if the channel can't be written to, or a commit is longer
+    //      - than 64 MiB
+    // Parameters:
+    //      - 'repo': the repository to write (it isn't changed)
+    //      - 'out': the channel to write to (it isn't closed)
+    public static void exportBinary(Repository repo, WritableByteChannel out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        buffer.putInt(MAGIC);
+        buffer.put(VERSION);
+
+        Repository.Commit commit = repo.getHeadCommit();
+        for (int i = 0; i < repo.getRepoSize(); i++) {
+            byte[] id = commit.id.getBytes(StandardCharsets.UTF_8);
+            byte[] message = commit.message.getBytes(StandardCharsets.UTF_8);
+            long length = (long) MINIMUM_RECORD_BYTES + id.length + message.length;
+            if (length > MAXIMUM_RECORD_BYTES) {
+                throw new IOException("Commit " + commit.id + " is too long to export");
+            }
+
+            buffer = ensureRoom(buffer, Integer.BYTES + (int) length, out);
+
+            buffer.putInt((int) length);
+            buffer.putLong(commit.timeStamp);
+            buffer.putLong(commit.order);
+            buffer.putInt(id.length);
+            buffer.put(id);
+            buffer.putInt(message.length);
+            buffer.put(message);
+            commit = commit.past;
+        }
+
+        flush(buffer, out);
+    }
+
+    // Behavior:
+    //      - creates a repository from commits written in the binary format
+    // Exceptions:
+    //      - Throws an IOException if the channel can't be read from, or doesn't hold a
+    //      - repository in the binary format (including commits out of order, or records
+    //      - longer than 64 MiB)
+    //      - Throws an IllegalArgumentException if the name is empty or null
+    // Parameters:
+    //      - 'name': the name of the created repository
+    //      - 'in': the channel to read from (it isn't closed)
+    // Returns:
+    //      - Repository: the repository holding the commits that were read
+    public static Repository importBinary(String name, ReadableByteChannel in)
+            throws IOException {
+        Repository repo = new Repository(name);
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        buffer.flip();
+
+        buffer = fill(buffer, Integer.BYTES + 1, in);
+        if (buffer.remaining() < Integer.BYTES + 1 || buffer.getInt() != MAGIC
+                || buffer.get() != VERSION) {
+            throw new IOException("Not a binary repository export");
+        }
+
+        while (true) {
+            buffer = fill(buffer, Integer.BYTES, in);
+            if (!buffer.hasRemaining()) {
+                return repo;
+            }
+
+            int length = readLength(buffer, MINIMUM_RECORD_BYTES, MAXIMUM_RECORD_BYTES);
+            buffer = fill(buffer, length, in);
+            if (buffer.remaining() < length) {
+                throw new IOException("Truncated commit record");
+            }
+
+            int end = buffer.position() + length;
+            long timeStamp = buffer.getLong();
+            long order = buffer.getLong();
+            String id = readString(buffer, end);
+            String message = readString(buffer, end);
+            if (buffer.position() != end) {
+                throw new IOException("Corrupt commit record");
+            }
+
+            append(repo, new Repository.Commit(id, message, timeStamp, order));
+        }
+    }
+
+    // Behavior:
+    //      - writes every commit of a repository to a channel as NDJSON (one object per line)
+    // Exceptions:
+    //      - Throws an IOException if the channel can't be written to, or a commit is longer
+    //      - than 64 MiB
+    // Parameters:
+    //      - 'repo': the repository to write (it isn't changed)
+    //      - 'out': the channel to write to (it isn't closed)
+    public static void exportNdjson(Repository repo, WritableByteChannel out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        StringBuilder line = new StringBuilder();
+
+        Repository.Commit commit = repo.getHeadCommit();
+        for (int i = 0; i < repo.getRepoSize(); i++) {
+            line.setLength(0);
+            line.append("{\"id\":");
+            appendJsonString(line, commit.id);
+            line.append(",\"timeStamp\":").append(commit.timeStamp);
+            line.append(",\"order\":").append(commit.order);
+            line.append(",\"message\":");
+            appendJsonString(line, commit.message);
+            line.append("}\n");
+
+            byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+            if (bytes.length - 1 > MAXIMUM_RECORD_BYTES) {
+                throw new IOException("Commit " + commit.id + " is too long to export");
+            }
+
+            buffer = ensureRoom(buffer, bytes.length, out);
+            buffer.put(bytes);
+            commit = commit.past;
+        }
+
+        flush(buffer, out);
+    }
+
+    // Behavior:
+    //      - creates a repository from commits written as NDJSON (empty lines are skipped)
+    // Exceptions:
+    //      - Throws an IOException if the channel can't be read from, or a line isn't a
+    //      - commit object with an id, timeStamp, order and message (or commits are out of
+    //      - order, or a line is longer than 64 MiB)
+    //      - Throws an IllegalArgumentException if the name is empty or null
+    // Parameters:
+    //      - 'name': the name of the created repository
+    //      - 'in': the channel to read from (it isn't closed)
+    // Returns:
+    //      - Repository: the repository holding the commits that were read
+    public static Repository importNdjson(String name, ReadableByteChannel in)
+            throws IOException {
+        Repository repo = new Repository(name);
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        byte[] line = new byte[256];
+        int lineLength = 0;
+        buffer.flip();
+
+        while (true) {
+            if (!buffer.hasRemaining()) {
+                buffer = fill(buffer, 1, in);
+
+                if (!buffer.hasRemaining()) {
+                    if (lineLength > 0) {
+                        append(repo, parseJsonCommit(line, lineLength));
+                    }
+
+                    return repo;
+                }
+            }
+
+            byte next = buffer.get();
+            if (next == '\n') {
+                if (lineLength > 0) {
+                    append(repo, parseJsonCommit(line, lineLength));
+                }
+
+                lineLength = 0;
+            } else {
+                if (lineLength == line.length) {
+                    if (lineLength == MAXIMUM_RECORD_BYTES) {
+                        throw new IOException("Line longer than " + MAXIMUM_RECORD_BYTES
+                                + " bytes");
+                    }
+
+                    line = Arrays.copyOf(line, Math.min(2 * line.length, MAXIMUM_RECORD_BYTES));
+                }
+
+                line[lineLength++] = next;
+            }
+        }
+    }
+
+    // Behavior:
+    //      - adds a commit that was read as the oldest commit of a repository
+    // Exceptions:
+    //      - Throws an IOException if the commit is more recent than the commit read before it
+    // Parameters:
+    //      - 'repo': the repository being rebuilt
+    //      - 'commit': the commit that was read
+    private static void append(Repository repo, Repository.Commit commit) throws IOException {
+        try {
+            repo.appendOldest(commit);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Commit " + commit.id + " is out of order", e);
+        }
+    }
+
+    // Behavior:
+    //      - makes sure a buffer that is being written has room for some more bytes, writing
+    //      - what it holds to the channel first if needed
+    // Exceptions:
+    //      - Throws an IOException if the channel can't be written to
+    // Parameters:
+    //      - 'buffer': the buffer being written
+    //      - 'needed': the number of bytes that are about to be put in the buffer
+    //      - 'out': the channel to write to
+    // Returns:
+    //      - ByteBuffer: a buffer with room for the bytes (a larger one if they can't fit in
+    //      - the usual buffer)
+    private static ByteBuffer ensureRoom(ByteBuffer buffer, int needed, WritableByteChannel out)
+            throws IOException {
+        if (buffer.remaining() >= needed) {
+            return buffer;
+        }
+
+        flush(buffer, out);
+        if (buffer.capacity() < needed) {
+            return ByteBuffer.allocate(needed);
+        }
+
+        return buffer;
+    }
+
+    // Behavior:
+    //      - writes everything a buffer holds to the channel and empties the buffer
+    // Exceptions:
+    //      - Throws an IOException if the channel can't be written to
+    // Parameters:
+    //      - 'buffer': the buffer being written
+    //      - 'out': the channel to write to
+    private static void flush(ByteBuffer buffer, WritableByteChannel out) throws IOException {
+        buffer.flip();
+
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+
+        buffer.clear();
+    }
+
+    // Behavior:
+    //      - makes sure a buffer that is being read holds at least some number of unread
+    //      - bytes, reading more from the channel if needed (fewer are left only at the end
+    //      - of the channel)
+    // Exceptions:
+    //      - Throws an IOException if the channel can't be read from
+    // Parameters:
+    //      - 'buffer': the buffer being read
+    //      - 'needed': the number of unread bytes wanted
+    //      - 'in': the channel to read from
+    // Returns:
+    //      - ByteBuffer: a buffer with the unread bytes (a larger one if they can't fit in the
+    //      - usual buffer)
+    private static ByteBuffer fill(ByteBuffer buffer, int needed, ReadableByteChannel in)
+            throws IOException {
+        if (buffer.remaining() >= needed) {
+            return buffer;
+        }
+
+        if (buffer.capacity() < needed) {
+            buffer = ByteBuffer.allocate(needed).put(buffer);
+        } else {
+            buffer.compact();
+        }
+
+        while (buffer.position() < needed && in.read(buffer) >= 0) {
+            //keep reading until enough bytes have arrived or the channel ends
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    // Behavior:
+    //      - reads a length from a buffer, checking that it makes sense
+    // Exceptions:
+    //      - Throws an IOException if the length is less than the given minimum or more than
+    //      - the given maximum
+    // Parameters:
+    //      - 'buffer': the buffer being read
+    //      - 'minimum': the smallest valid length
+    //      - 'maximum': the largest valid length
+    // Returns:
+    //      - int: the length that was read
+    private static int readLength(ByteBuffer buffer, int minimum, int maximum)
+            throws IOException {
+        int length = buffer.getInt();
+
+        if (length < minimum || length > maximum) {
+            throw new IOException("Corrupt length " + length);
+        }
+
+        return length;
+    }
+
+    // Behavior:
+    //      - reads a length-prefixed UTF-8 string from a buffer that holds the whole record
+    // Exceptions:
+    //      - Throws an IOException if the string doesn't fit in the record
+    // Parameters:
+    //      - 'buffer': the buffer being read
+    //      - 'end': the position in the buffer where the record ends
+    // Returns:
+    //      - String: the string that was read
+    private static String readString(ByteBuffer buffer, int end) throws IOException {
+        if (end - buffer.position() < Integer.BYTES) {
+            throw new IOException("Corrupt commit record");
+        }
+
+        int length = readLength(buffer, 0, end - buffer.position() - Integer.BYTES);
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Behavior:
+    //      - adds a string to a line of JSON as a quoted, escaped JSON string
+    // Parameters:
+    //      - 'line': the line being built
+    //      - 'value': the string to add
+    private static void appendJsonString(StringBuilder line, String value) {
+        line.append('"');
+
+        for (int i = 0; i < value.length(); i++) {
+            char next = value.charAt(i);
+
+            if (next == '"' || next == '\\') {
+                line.append('\\').append(next);
+            } else if (next == '\n') {
+                line.append("\\n");
+            } else if (next == '\r') {
+                line.append("\\r");
+            } else if (next == '\t') {
+                line.append("\\t");
+            } else if (next < 0x20) {
+                line.append(String.format("\\u%04x", (int) next));
+            } else {
+                line.append(next);
+            }
+        }
+
+        line.append('"');
+    }
+
+    // Behavior:
+    //      - turns one line of NDJSON into a commit
+    // Exceptions:
+    //      - Throws an IOException if the line isn't a JSON object with a string "id", number
+    //      - "timeStamp", number "order" and string "message" (other fields are ignored)
+    // Parameters:
+    //      - 'bytes': the UTF-8 bytes of the line
+    //      - 'length': the number of bytes in the line
+    // Returns:
+    //      - Repository.Commit: the commit described by the line
+    private static Repository.Commit parseJsonCommit(byte[] bytes, int length)
+            throws IOException {
+        JsonReader reader = new JsonReader(new String(bytes, 0, length, StandardCharsets.UTF_8));
+        Map<String, Object> fields = reader.readObject();
+        reader.expectEnd();
+
+        if (!(fields.get("id") instanceof String) || !(fields.get("message") instanceof String)
+                || !(fields.get("timeStamp") instanceof Long)
+                || !(fields.get("order") instanceof Long)) {
+            throw new IOException("Not a commit: " + reader.text);
+        }
+
+        return new Repository.Commit((String) fields.get("id"), (String) fields.get("message"),
+                (Long) fields.get("timeStamp"), (Long) fields.get("order"));
+    }
+
+    //Reads a flat JSON object (whose values are strings, whole numbers, booleans or null) from
+    //a single line of text
+    private static class JsonReader {
+        private final String text;
+        private int position;
+
+        // Behavior:
+        //      - creates a reader positioned at the start of the text
+        // Parameter:
+        //      - 'text': the text to read
+        private JsonReader(String text) {
+            this.text = text;
+        }
+
+        // Behavior:
+        //      - reads an object, turning strings into Strings and numbers into Longs
+        // Exceptions:
+        //      - Throws an IOException if the text isn't a flat JSON object
+        // Returns:
+        //      - Map<String, Object>: the fields of the object
+        private Map<String, Object> readObject() throws IOException {
+            Map<String, Object> fields = new HashMap<>();
+            expect('{');
+
+            if (peek() == '}') {
+                position++;
+                return fields;
+            }
+
+            do {
+                String key = readString();
+                expect(':');
+                fields.put(key, readValue());
+            } while (accept(','));
+
+            expect('}');
+            return fields;
+        }
+
+        // Behavior:
+        //      - makes sure nothing but whitespace is left in the text
+        // Exceptions:
+        //      - Throws an IOException if anything else is left
+        private void expectEnd() throws IOException {
+            if (peek() != 0) {
+                throw error();
+            }
+        }
+
+        // Behavior:
+        //      - reads a string, whole number, boolean or null value
+        // Exceptions:
+        //      - Throws an IOException if there is no such value
+        // Returns:
+        //      - Object: a String, Long, Boolean, or null
+        private Object readValue() throws IOException {
+            char next = peek();
+
+            if (next == '"') {
+                return readString();
+            } else if (next == '-' || (next >= '0' && next <= '9')) {
+                int start = position;
+                position++;
+
+                while (position < text.length() && Character.isDigit(text.charAt(position))) {
+                    position++;
+                }
+
+                try {
+                    return Long.parseLong(text.substring(start, position));
+                } catch (NumberFormatException e) {
+                    throw error();
+                }
+            } else if (text.startsWith("true", position)) {
+                position += 4;
+                return Boolean.TRUE;
+            } else if (text.startsWith("false", position)) {
+                position += 5;
+                return Boolean.FALSE;
+            } else if (text.startsWith("null", position)) {
+                position += 4;
+                return null;
+            }
+
+            throw error();
+        }
+
+        // Behavior:
+        //      - reads a quoted JSON string, undoing its escapes
+        // Exceptions:
+        //      - Throws an IOException if there is no complete string
+        // Returns:
+        //      - String: the string's contents
+        private String readString() throws IOException {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+
+            while (position < text.length()) {
+                char next = text.charAt(position++);
+
+                if (next == '"') {
+                    return value.toString();
+                } else if (next != '\\') {
+                    value.append(next);
+                } else if (position < text.length()) {
+                    char escaped = text.charAt(position++);
+
+                    if (escaped == 'n') {
+                        value.append('\n');
+                    } else if (escaped == 'r') {
+                        value.append('\r');
+                    } else if (escaped == 't') {
+                        value.append('\t');
+                    } else if (escaped == 'b') {
+                        value.append('\b');
+                    } else if (escaped == 'f') {
+                        value.append('\f');
+                    } else if (escaped == 'u' && position + 4 <= text.length()) {
+                        try {
+                            value.append((char) Integer.parseInt(
+                                    text.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error();
+                        }
+                        position += 4;
+                    } else if (escaped == '"' || escaped == '\\' || escaped == '/') {
+                        value.append(escaped);
+                    } else {
+                        throw error();
+                    }
+                }
+            }
+
+            throw error();
+        }
+
+        // Behavior:
+        //      - skips whitespace and consumes the given character
+        // Exceptions:
+        //      - Throws an IOException if the next character is something else
+        // Parameter:
+        //      - 'expected': the character that should come next
+        private void expect(char expected) throws IOException {
+            if (!accept(expected)) {
+                throw error();
+            }
+        }
+
+        // Behavior:
+        //      - skips whitespace and consumes the given character if it comes next
+        // Parameter:
+        //      - 'expected': the character to look for
+        // Returns:
+        //      - boolean: true if the character came next (and was consumed)
+        private boolean accept(char expected) {
+            if (peek() == expected) {
+                position++;
+                return true;
+            }
+
+            return false;
+        }
+
+        // Behavior:
+        //      - skips whitespace and looks at the next character without consuming it
+        // Returns:
+        //      - char: the next character (0 at the end of the text)
+        private char peek() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+
+            return position < text.length() ? text.charAt(position) : 0;
+        }
+
+        // Behavior:
+        //      - creates the exception for text that can't be read
+        // Returns:
+        //      - IOException: the exception, naming the position of the problem
+        private IOException error() {
+            return new IOException("Malformed JSON at position " + position + ": " + text);
+        }
+    }
+}
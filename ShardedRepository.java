@@ -0,0 +1,217 @@
+import java.util.*;
+import java.util.stream.*;
+
+//Represents a repository whose commits are spread across several smaller repositories (shards)
+//so that no single commit chain has to hold every commit. New commits are dealt out to the
+//shards in turn, lookups by id are answered by the shards whose Bloom filters may hold the id,
+//and the history is rebuilt by merging the shards in commit order. Each shard is an ordinary
+//Repository, so a set of local repositories stands in for a cluster of separate nodes.
+public class ShardedRepository {
+
+    private String repositoryName;
+    private Repository[] shards;
+    private int nextShard;
+
+    // Behavior: 
+    //      - creates a new, empty, repository made of the given number of shards
+    // Exceptions:
+    //      - Throws an IllegalArgumentException if the client enters a name that is empty
+    //      - or the provided name is null, or a number of shards that is less than one
+    // Parameters:
+    //      - 'name': the name of the created repository
+    //      - 'shardCount': the number of shards to spread commits across
+    public ShardedRepository(String name, int shardCount) {
+        if (name == null || name.isEmpty() || shardCount < 1) {
+            throw new IllegalArgumentException();
+        }
+
+        repositoryName = name;
+        shards = new Repository[shardCount];
+
+        // a sharded repository can't undo or redo, so its shards don't keep journals
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Repository(name + "-" + i, 0);
+        }
+    }
+
+    // Behavior: 
+    //      - provides the number of shards that commits are spread across
+    // Returns: 
+    //      - int: number of shards
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    // Behavior: 
+    //      - provides the client with the id of the most recent commit in the repo
+    // Returns: 
+    //      - String: id of most recent commit (null if there are no commits in the repo)
+    public String getRepoHead() {
+        Repository.Commit head = newestHead();
+
+        if (head == null) {
+            return null;
+        }
+
+        return head.id;
+    }
+
+    // Behavior: 
+    //      - provides the size of the repository (number of commits across all shards)
+    // Returns: 
+    //      - int: repository size
+    public int getRepoSize() {
+        int size = 0;
+
+        for (Repository shard : shards) {
+            size += shard.getRepoSize();
+        }
+
+        return size;
+    }
+
+    // Behavior: 
+    //      - creates a representation of the repository by detailing the name of the repo
+    //      - and the current head of the repository
+    // Returns: 
+    //      - String: representation of the repository and its head 
+    public String toString() {
+        String stringRepresentation = repositoryName + " - ";
+        Repository.Commit head = newestHead();
+
+        if (head == null) {
+            return stringRepresentation + "No commits";
+        }
+
+        return stringRepresentation + "Current head: " + head.toString();
+    }
+
+    // Behavior: 
+    //      - checks if the repository contains a certain commit using its id (only shards
+    //      - whose Bloom filter may hold the id are searched)
+    // Parameter:
+    //      - 'targetId': the id of the commit that we want to check for in the repository
+    // Returns: 
+    //      - boolean: true if the commit with the corresponding id is contained within the
+    //      - repository and false if it isn't contained in the repository
+    public boolean contains(String targetId) {
+        for (Repository shard : shards) {
+            if (shard.contains(targetId)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Behavior: 
+    //      - returns a list of commits in the repository (most recent to least recent) based
+    //      - on the number of commits that the client provides they want to see (if that number
+    //      - is greater than the size of the repository, then the history representation will
+    //      - just include all of the commits in the repository)
+    //      - the shards are merged as they are read, so only 'n' commits are ever visited
+    // Exceptions:
+    //      - Throws an IllegalArgumentException if the client enters a number of commits they
+    //      - want to see in the history that is less than or equal to zero
+    // Parameter:
+    //      - 'n': the number of commits in the history that the client wants to see
+    // Returns: 
+    //      - String: a representation of the history of the repository up until 'n' commits 
+    public String getHistory(int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException();
+        }
+
+        //the most recent commit that hasn't been printed yet from every shard
+        PriorityQueue<Repository.Commit> nextCommits = new PriorityQueue<>(shards.length,
+                (first, second) -> Long.compare(second.order, first.order));
+
+        for (Repository shard : shards) {
+            if (shard.getHeadCommit() != null) {
+                nextCommits.add(shard.getHeadCommit());
+            }
+        }
+
+        StringBuilder history = new StringBuilder();
+
+        while (!nextCommits.isEmpty() && n > 0) {
+            Repository.Commit newest = nextCommits.remove();
+            history.append(newest.toString()).append("\n");
+
+            if (newest.past != null) {
+                nextCommits.add(newest.past);
+            }
+
+            n--;
+        }
+
+        return history.toString();
+    }
+
+    // Behavior: 
+    //      - adds a commit to the repository as the head of the repository (most recent commit),
+    //      - storing it in the next shard in turn
+    // Parameter:
+    //      - 'message': the client provided message that will be part of the commit
+    // Returns: 
+    //      - String: the id of the most recent created commit 
+    public String commit(String message) {
+        Repository shard = shards[nextShard];
+        nextShard = (nextShard + 1) % shards.length;
+        return shard.commit(message);
+    }
+
+    // Behavior: 
+    //      - removes a commit from the repository if the commit is present (only shards
+    //      - whose Bloom filter may hold the id are searched)
+    // Parameter:
+    //      - 'targetId': the id of the commit that we want to remove from the repository
+    // Returns: 
+    //      - boolean: true if the drop was successful (commit was present in the repository
+    //      - and was removed) and false if the drop was unsuccesful (commit wasn't present in
+    //      - the repository so nothing was removed)
+    public boolean drop(String targetId) {
+        for (Repository shard : shards) {
+            if (shard.drop(targetId)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Behavior: 
+    //      - combines another sharded repository with this repository by synchronizing every
+    //      - shard of the other repository into one shard of this repository (the other
+    //      - repository is empty after this action)
+    //      - the shards of this repository are independent of each other, so they are
+    //      - synchronized in parallel
+    // Parameter:
+    //      - 'other': the repository whose commits we want to combine into this repository (we
+    //                  are assuming that other is non-null and isn't this repository)
+    public void synchronize(ShardedRepository other) {
+        IntStream.range(0, shards.length).parallel().forEach(target -> {
+            for (int source = target; source < other.shards.length; source += shards.length) {
+                shards[target].synchronize(other.shards[source]);
+            }
+        });
+    }
+
+    // Behavior: 
+    //      - finds the most recent commit across all shards
+    // Returns: 
+    //      - Repository.Commit: the most recent commit (null if there are no commits)
+    private Repository.Commit newestHead() {
+        Repository.Commit newest = null;
+
+        for (Repository shard : shards) {
+            Repository.Commit head = shard.getHeadCommit();
+
+            if (head != null && (newest == null || head.order > newest.order)) {
+                newest = head;
+            }
+        }
+
+        return newest;
+    }
+}
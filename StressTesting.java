@@ -0,0 +1,593 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+import java.io.*;
+import java.nio.channels.Channels;
+
+// Randomized tests that run generated sequences of operations against repositories and a
+// simple reference model (a list of ids from most recent to oldest per repository), checking
+// after every operation that the repositories and the model agree on size, head, oldest commit
+// and contents, and every few operations that their full histories agree and that ids stay
+// unique. A second group of tests runs commits, history reads and synchronizes from several
+// threads at once, starting them together many times over to shake out bad interleavings.
+//
+// Every run prints its seed. The amount of work can be changed with system properties. The
+// default run takes about ten seconds; a longer run before a release, such as the one below,
+// takes about six minutes (the time grows linearly with the number of sequences and rounds):
+//      -Dstress.seed=42 -Dstress.sequences=200000 -Dstress.operations=60
+//      -Dstress.rounds=5000 -Dstress.threads=8
+public class StressTesting {
+    private static final long SEED = Long.getLong("stress.seed", System.nanoTime());
+    private static final int SEQUENCES = Integer.getInteger("stress.sequences", 2000);
+    private static final int OPERATIONS = Integer.getInteger("stress.operations", 60);
+    private static final int ROUNDS = Integer.getInteger("stress.rounds", 50);
+    private static final int THREADS = Integer.getInteger("stress.threads", 4);
+
+    private static final int MAX_REPOSITORIES = 6;
+    private static final int FULL_CHECK_INTERVAL = 10;
+    private static final int SHALLOW_JOURNAL_DEPTH = 3;
+    private static final int DEFAULT_JOURNAL_DEPTH = 16;
+
+    private Random random;
+    private List<Repository> repos;
+    private List<Model> models;
+    private Map<String, Long> sequenceNumbers;
+    private Map<String, String> messages;
+    private long nextSequenceNumber;
+
+    // Occurs before each of the individual test cases
+    // (creates a random number generator from the seed of this run)
+    @BeforeEach
+    public void setUp() {
+        System.out.println("StressTesting seed: " + SEED);
+        random = new Random(SEED);
+        sequenceNumbers = new HashMap<>();
+        messages = new HashMap<>();
+    }
+
+    // Behavior:
+    //      - runs generated sequences of commit, drop, dropOldest, synchronize, fork, undo and
+    //      - redo operations against a few repositories and checks them against the model
+    //      - after every operation (their full histories every few operations)
+    @Test
+    @DisplayName("Repository - random operations match the reference model")
+    public void testRandomOperations() {
+        for (int sequence = 0; sequence < SEQUENCES; sequence++) {
+            repos = new ArrayList<>();
+            models = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                int depth = i == 0 ? SHALLOW_JOURNAL_DEPTH : DEFAULT_JOURNAL_DEPTH;
+                repos.add(new Repository("repo" + i, depth));
+                models.add(new Model(depth));
+            }
+
+            List<String> log = new ArrayList<>();
+            for (int operation = 0; operation < OPERATIONS; operation++) {
+                log.add(randomOperation());
+                boolean full = operation % FULL_CHECK_INTERVAL == FULL_CHECK_INTERVAL - 1
+                        || operation == OPERATIONS - 1;
+
+                for (int i = 0; i < repos.size(); i++) {
+                    int checked = i;
+                    int checkedSequence = sequence;
+                    Supplier<String> context = () -> String.format(
+                            "seed %d, sequence %d, repo%d after %s",
+                            SEED, checkedSequence, checked, log);
+                    checkAgainstModel(repos.get(i), models.get(i), full, context);
+                }
+            }
+        }
+    }
+
+    // Behavior:
+    //      - runs generated sequences of commit, drop and synchronize operations against
+    //      - off-heap repositories and checks them against the model after every operation
+    //      - (their full histories every few operations)
+    @Test
+    @DisplayName("ArenaRepository - random operations match the reference model")
+    public void testRandomArenaOperations() {
+        for (int sequence = 0; sequence < SEQUENCES / 10; sequence++) {
+            List<ArenaRepository> arenas = new ArrayList<>();
+            List<List<String>> expected = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                arenas.add(new ArenaRepository("arena" + i));
+                expected.add(new ArrayList<>());
+            }
+
+            for (int operation = 0; operation < OPERATIONS; operation++) {
+                int target = random.nextInt(arenas.size());
+                ArenaRepository arena = arenas.get(target);
+                List<String> ids = expected.get(target);
+                int choice = random.nextInt(4);
+
+                if (choice < 2) {
+                    String message = "Message " + nextSequenceNumber;
+                    String id = arena.commit(message);
+                    remember(id, message);
+                    ids.add(0, id);
+                } else if (choice == 2) {
+                    String id = randomId(ids);
+                    assertEquals(ids.remove(id), arena.drop(id));
+                } else {
+                    int source = random.nextInt(arenas.size());
+                    if (source != target) {
+                        arena.synchronize(arenas.get(source));
+                        ids.addAll(expected.get(source));
+                        expected.get(source).clear();
+                        ids.sort(newestFirst());
+                    }
+                }
+
+                boolean full = operation % FULL_CHECK_INTERVAL == FULL_CHECK_INTERVAL - 1
+                        || operation == OPERATIONS - 1;
+                for (int i = 0; i < arenas.size(); i++) {
+                    ArenaRepository checked = arenas.get(i);
+                    List<String> checkedIds = expected.get(i);
+                    int checkedArena = i;
+                    int checkedSequence = sequence;
+                    Supplier<String> context = () -> String.format(
+                            "seed %d, sequence %d, arena%d", SEED, checkedSequence, checkedArena);
+
+                    assertEquals(checkedIds.size(), checked.getRepoSize(), context);
+                    assertEquals(checkedIds.isEmpty() ? null : checkedIds.get(0),
+                                 checked.getRepoHead(), context);
+                    if (full && !checkedIds.isEmpty()) {
+                        checkHistory(checked.getHistory(checkedIds.size() + 1), checkedIds,
+                                     checkedIds.size(), context);
+                    }
+                }
+            }
+        }
+    }
+
+    // Behavior:
+    //      - commits from several threads at once (each to its own repository) and checks that
+    //      - every id and clock reading was handed out exactly once, that each repository is
+    //      - in commit order, and that synchronizing all of them gives one total order
+    // Exceptions:
+    //      - Throws an Exception if a thread fails or is interrupted
+    @Test
+    @DisplayName("Repository - concurrent commits")
+    public void testConcurrentCommits() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                Repository[] threadRepos = new Repository[THREADS];
+                for (int i = 0; i < THREADS; i++) {
+                    threadRepos[i] = new Repository("thread" + i);
+                }
+
+                runTogether(pool, thread -> {
+                    for (int i = 0; i < 200; i++) {
+                        threadRepos[thread].commit("Thread " + thread + " commit " + i);
+                    }
+                });
+
+                String context = "round " + round;
+                Set<String> ids = new HashSet<>();
+                Set<Long> readings = new HashSet<>();
+                for (Repository repo : threadRepos) {
+                    assertEquals(200, repo.getRepoSize());
+                    checkCommitOrder(repo, () -> context);
+
+                    for (Repository.Commit commit = repo.getHeadCommit(); commit != null;
+                            commit = commit.past) {
+                        assertTrue(ids.add(commit.id), "Duplicate id " + commit.id);
+                        assertTrue(readings.add(commit.order), "Duplicate clock reading");
+                    }
+                }
+
+                for (int i = 1; i < THREADS; i++) {
+                    threadRepos[0].synchronize(threadRepos[i]);
+                }
+                assertEquals(200 * THREADS, threadRepos[0].getRepoSize());
+                checkCommitOrder(threadRepos[0], () -> context);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Behavior:
+    //      - commits to and reads the history of several repositories from several threads
+    //      - at once (each thread with its own repository and history cache, all sharing the
+    //      - id counter and clock) and checks that no thread ever reads a history that is out
+    //      - of date
+    // Exceptions:
+    //      - Throws an Exception if a thread fails or is interrupted
+    @Test
+    @DisplayName("Repository - concurrent history reads")
+    public void testConcurrentHistoryReads() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                runTogether(pool, thread -> {
+                    Repository repo = new Repository("reader" + thread);
+
+                    for (int i = 0; i < 100; i++) {
+                        String id = repo.commit("Commit " + i);
+                        String history = repo.getHistory(1 + i % 3);
+
+                        if (!history.startsWith(id + " at ")
+                                || !repo.getHistory(1 + i % 3).equals(history)) {
+                            throw new AssertionError("Out of date history: " + history);
+                        }
+                    }
+                });
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Behavior:
+    //      - synchronizes sharded repositories (whose shards are synchronized in parallel)
+    //      - and checks the result against the commits in the order they were made
+    @Test
+    @DisplayName("ShardedRepository - parallel synchronize matches commit order")
+    public void testShardedSynchronize() {
+        for (int round = 0; round < ROUNDS; round++) {
+            ShardedRepository first = new ShardedRepository("first", 1 + random.nextInt(6));
+            ShardedRepository second = new ShardedRepository("second", 1 + random.nextInt(6));
+            List<String> ids = new ArrayList<>();
+
+            for (int i = 0; i < 300; i++) {
+                String message = "Message " + nextSequenceNumber;
+                String id = (random.nextBoolean() ? first : second).commit(message);
+                remember(id, message);
+                ids.add(0, id);
+            }
+
+            for (int i = 0; i < 20; i++) {
+                String id = ids.remove(random.nextInt(ids.size()));
+                assertTrue(first.drop(id) || second.drop(id));
+            }
+
+            first.synchronize(second);
+            int checkedRound = round;
+            Supplier<String> context = () -> String.format("seed %d, round %d",
+                                                           SEED, checkedRound);
+            assertEquals(ids.size(), first.getRepoSize(), context);
+            assertEquals(0, second.getRepoSize(), context);
+            checkHistory(first.getHistory(ids.size()), ids, ids.size(), context);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////
+    // REFERENCE MODEL                                                              //
+    //////////////////////////////////////////////////////////////////////////////////
+
+    // Represents what a repository should hold: its ids from most recent to oldest, and the
+    // changes that it should be able to undo and redo
+    private static class Model {
+        private List<String> ids = new ArrayList<>();
+        private final Deque<Change> undo = new ArrayDeque<>();
+        private final Deque<Change> redo = new ArrayDeque<>();
+        private final int journalDepth;
+        private int modCount;
+
+        private Model(int journalDepth) {
+            this.journalDepth = journalDepth;
+        }
+    }
+
+    // Represents a change in a model's journal: the ids of the model (and of the other model,
+    // for a synchronize) before and after the change
+    private static class Change {
+        private final List<String> before;
+        private final List<String> after;
+        private final Model other;
+        private final List<String> otherBefore;
+        private final List<String> otherAfter;
+        private int otherModCount;
+
+        private Change(List<String> before, List<String> after, Model other,
+                       List<String> otherBefore) {
+            this.before = before;
+            this.after = new ArrayList<>(after);
+            this.other = other;
+            this.otherBefore = otherBefore;
+            this.otherAfter = other == null ? null : new ArrayList<>(other.ids);
+            this.otherModCount = other == null ? 0 : other.modCount;
+        }
+    }
+
+    // Performs one random operation on a random repository and the same operation on its model
+    // Returns a short description of the operation (for failure messages)
+    private String randomOperation() {
+        int target = random.nextInt(repos.size());
+        Repository repo = repos.get(target);
+        Model model = models.get(target);
+        List<String> before = new ArrayList<>(model.ids);
+        int choice = random.nextInt(10);
+
+        if (choice < 3) {
+            String message = "Message " + nextSequenceNumber;
+            String id = repo.commit(message);
+            remember(id, message);
+            model.ids.add(0, id);
+            recordChange(model, before, null, null);
+            return "commit(" + target + ")=" + id;
+        } else if (choice < 5) {
+            String id = randomId(model.ids);
+            boolean dropped = model.ids.remove(id);
+            assertEquals(dropped, repo.drop(id), "drop(" + id + ")");
+            if (dropped) {
+                recordChange(model, before, null, null);
+            }
+            return "drop(" + target + ", " + id + ")";
+        } else if (choice == 5) {
+            int k = 1 + random.nextInt(3);
+            int removed = Math.min(k, model.ids.size());
+            assertEquals(removed, repo.dropOldest(k), "dropOldest(" + k + ")");
+            if (removed > 0) {
+                model.ids.subList(model.ids.size() - removed, model.ids.size()).clear();
+                recordChange(model, before, null, null);
+            }
+            return "dropOldest(" + target + ", " + k + ")";
+        } else if (choice == 6) {
+            int source = random.nextInt(repos.size());
+            Model other = models.get(source);
+            if (source == target) {
+                return "skip";
+            }
+
+            // commits that both repositories hold (since a fork) are kept only once
+            repos.get(target).synchronize(repos.get(source));
+            if (!other.ids.isEmpty()) {
+                List<String> otherBefore = new ArrayList<>(other.ids);
+                Set<String> union = new HashSet<>(model.ids);
+                union.addAll(other.ids);
+                model.ids = new ArrayList<>(union);
+                model.ids.sort(newestFirst());
+                other.ids.clear();
+                other.modCount++;
+                other.undo.clear();
+                other.redo.clear();
+                recordChange(model, before, other, otherBefore);
+            }
+            return "synchronize(" + target + ", " + source + ")";
+        } else if (choice == 7 && repos.size() < MAX_REPOSITORIES) {
+            repos.add(repo.fork("fork" + repos.size()));
+            Model forked = new Model(DEFAULT_JOURNAL_DEPTH);
+            forked.ids.addAll(model.ids);
+            models.add(forked);
+            model.modCount++;
+            model.undo.clear();
+            model.redo.clear();
+            return "fork(" + target + ")";
+        } else if (choice == 8) {
+            undoModel(repo, model);
+            return "undo(" + target + ")";
+        } else if (choice == 9) {
+            redoModel(repo, model);
+            return "redo(" + target + ")";
+        }
+
+        return "skip";
+    }
+
+    // Adds a change that was just made to a model's journal
+    private void recordChange(Model model, List<String> before, Model other,
+                              List<String> otherBefore) {
+        model.modCount++;
+        model.redo.clear();
+
+        if (model.journalDepth > 0) {
+            model.undo.addFirst(new Change(before, model.ids, other, otherBefore));
+
+            if (model.undo.size() > model.journalDepth) {
+                model.undo.removeLast();
+            }
+        }
+    }
+
+    // Undoes a change in a repository and its model (or checks that it can't be undone, which
+    // also forgets every older change)
+    private void undoModel(Repository repo, Model model) {
+        Change change = model.undo.peekFirst();
+
+        if (change == null) {
+            assertFalse(repo.undo());
+        } else if (change.other != null && change.other.modCount != change.otherModCount) {
+            assertThrows(IllegalStateException.class, () -> {
+                repo.undo();
+            });
+            model.undo.clear();
+        } else {
+            assertTrue(repo.undo());
+            model.undo.removeFirst();
+            model.redo.addFirst(change);
+            model.ids = new ArrayList<>(change.before);
+            model.modCount++;
+
+            if (change.other != null) {
+                change.other.ids = new ArrayList<>(change.otherBefore);
+                change.otherModCount = ++change.other.modCount;
+            }
+        }
+    }
+
+    // Redoes a change in a repository and its model (or checks that it can't be redone, which
+    // also forgets every change undone before it)
+    private void redoModel(Repository repo, Model model) {
+        Change change = model.redo.peekFirst();
+
+        if (change == null) {
+            assertFalse(repo.redo());
+        } else if (change.other != null && change.other.modCount != change.otherModCount) {
+            assertThrows(IllegalStateException.class, () -> {
+                repo.redo();
+            });
+            model.redo.clear();
+        } else {
+            assertTrue(repo.redo());
+            model.redo.removeFirst();
+            model.undo.addFirst(change);
+            model.ids = new ArrayList<>(change.after);
+            model.modCount++;
+
+            if (change.other != null) {
+                change.other.ids = new ArrayList<>(change.otherAfter);
+                change.otherModCount = ++change.other.modCount;
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////
+    // CHECKS AND HELPERS                                                           //
+    //////////////////////////////////////////////////////////////////////////////////
+
+    // Makes sure a repository agrees with its model: same size, head, oldest commit, history
+    // for a few of the most recent commits, and answers to contains. A full check also makes
+    // sure that the history agrees in full and for a random number of commits, with unique ids
+    // in strictly decreasing clock order (rendering and walking every commit is what makes a
+    // check expensive, so it isn't done after every operation). Some full checks also make sure
+    // that the repository survives being exported and imported again.
+    private void checkAgainstModel(Repository repo, Model model, boolean full,
+                                   Supplier<String> context) {
+        List<String> ids = model.ids;
+        assertEquals(ids.size(), repo.getRepoSize(), context);
+        assertEquals(ids.isEmpty() ? null : ids.get(0), repo.getRepoHead(), context);
+        assertEquals(ids.isEmpty() ? null : ids.get(ids.size() - 1), repo.getOldest(), context);
+
+        if (full) {
+            checkCommitOrder(repo, context);
+        }
+
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        if (full) {
+            checkHistory(repo.getHistory(ids.size() + 1), ids, ids.size(), context);
+        }
+
+        int n = 1 + random.nextInt(full ? ids.size() : Math.min(ids.size(), 3));
+        checkHistory(repo.getHistory(n), ids, n, context);
+
+        assertTrue(repo.contains(ids.get(random.nextInt(ids.size()))), context);
+        String missing = "" + (Integer.parseInt(ids.get(0)) + 1 + random.nextInt(5));
+        assertEquals(ids.contains(missing), repo.contains(missing), context);
+
+        if (full && random.nextInt(10) == 0) {
+            checkRoundTrip(repo, context);
+        }
+    }
+
+    // Makes sure a history shows exactly the first 'n' of the given ids with their messages
+    private void checkHistory(String history, List<String> ids, int n,
+                              Supplier<String> context) {
+        String[] lines = history.split("\n");
+        assertEquals(n, lines.length, context);
+
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < n; i++) {
+            String id = ids.get(i);
+            String line = lines[i];
+            int number = i;
+            assertTrue(line.startsWith(id + " at "),
+                       () -> String.format("%s: line %d is [%s], expected id %s",
+                                           context.get(), number, line, id));
+            assertTrue(lines[i].endsWith(": " + messages.get(id)), context);
+            assertTrue(seen.add(id), () -> context.get() + ": duplicate id " + id);
+        }
+    }
+
+    // Makes sure a repository's clock readings strictly decrease from its head to its oldest
+    // commit, and that its oldest commit is 'size' commits down its chain (a trimmed fork's
+    // oldest commit may still link to the commits that were removed)
+    private void checkCommitOrder(Repository repo, Supplier<String> context) {
+        Repository.Commit commit = repo.getHeadCommit();
+        Repository.Commit oldest = null;
+        long previous = Long.MAX_VALUE;
+
+        for (int i = 0; i < repo.getRepoSize(); i++) {
+            assertNotNull(commit, context);
+            assertTrue(commit.order < previous, () -> context.get() + ": commits out of order");
+            previous = commit.order;
+            oldest = commit;
+            commit = commit.past;
+        }
+
+        assertEquals(repo.getOldest(), oldest == null ? null : oldest.id, context);
+    }
+
+    // Makes sure that a repository exported in both formats is imported with the same history
+    private void checkRoundTrip(Repository repo, Supplier<String> context) {
+        try {
+            ByteArrayOutputStream binary = new ByteArrayOutputStream();
+            RepositoryIO.exportBinary(repo, Channels.newChannel(binary));
+            Repository fromBinary = RepositoryIO.importBinary("binary",
+                    Channels.newChannel(new ByteArrayInputStream(binary.toByteArray())));
+
+            ByteArrayOutputStream ndjson = new ByteArrayOutputStream();
+            RepositoryIO.exportNdjson(repo, Channels.newChannel(ndjson));
+            Repository fromNdjson = RepositoryIO.importNdjson("ndjson",
+                    Channels.newChannel(new ByteArrayInputStream(ndjson.toByteArray())));
+
+            int n = repo.getRepoSize() + 1;
+            assertEquals(repo.getHistory(n), fromBinary.getHistory(n), context);
+            assertEquals(repo.getHistory(n), fromNdjson.getHistory(n), context);
+        } catch (IOException e) {
+            fail(context.get(), e);
+        }
+    }
+
+    // Remembers the message and commit order of a commit that was just made
+    private void remember(String id, String message) {
+        sequenceNumbers.put(id, nextSequenceNumber++);
+        messages.put(id, message);
+    }
+
+    // Picks an id to look for: usually one of the given ids, sometimes one that isn't there
+    private String randomId(List<String> ids) {
+        if (ids.isEmpty() || random.nextInt(4) == 0) {
+            return "" + random.nextInt((int) Math.max(1, nextSequenceNumber) + 10);
+        }
+
+        return ids.get(random.nextInt(ids.size()));
+    }
+
+    // Orders ids from the most recently committed to the oldest
+    private Comparator<String> newestFirst() {
+        return (first, second) -> Long.compare(sequenceNumbers.get(second),
+                                               sequenceNumbers.get(first));
+    }
+
+    // Represents the work one thread does in a concurrent test
+    private interface ThreadWork {
+        void run(int thread) throws Exception;
+    }
+
+    // Runs the given work on every thread, releasing all of the threads at the same moment so
+    // that their operations overlap as much as possible, and rethrows the first failure
+    private void runTogether(ExecutorService pool, ThreadWork work) throws Exception {
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        List<Future<?>> results = new ArrayList<>();
+
+        for (int i = 0; i < THREADS; i++) {
+            int thread = i;
+            results.add(pool.submit(() -> {
+                start.await();
+                work.run(thread);
+                return null;
+            }));
+        }
+
+        for (Future<?> result : results) {
+            try {
+                result.get(1, TimeUnit.MINUTES);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw (Exception) e.getCause();
+            }
+        }
+    }
+}
@@ -1,5 +1,10 @@
 import org.junit.jupiter.api.*;
 import static org.junit.jupiter.api.Assertions.*;
+import java.util.*;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 
 
 
@@ -22,11 +27,9 @@ public class Testing {
     // Behavior: 
     //      - tests the history command if the n given is a plausible value (> 0 and in this case
     //      - <= size of the repository)
-    // Exceptions:
-    //      - Throws an InterruptedException in case the test is interrupted 
     @Test
     @DisplayName("history() - n is valid")
-    void testingValidHistoryCommand() throws InterruptedException{
+    void testingValidHistoryCommand() {
         commitAll(repo1, new String[]{"One", "Two"});
         assertEquals(2, repo1.getRepoSize());
 
@@ -36,12 +39,11 @@ public class Testing {
     // Behavior: 
     //      - tests the history command if the n given is an invalid value (<= 0)
     // Exceptions:
-    //      - Throws an InterruptedException in case the test is interrupted 
     //      - An IllegalArgumentException is thrown by the getHistory() method since
     //      - n <= 0
     @Test
     @DisplayName("history() - n is invalid")
-    void testingInvalidHistoryCommand() throws InterruptedException{
+    void testingInvalidHistoryCommand() {
         commitAll(repo1, new String[]{"One", "Two"});
         assertEquals(2, repo1.getRepoSize());
 
@@ -59,11 +61,9 @@ public class Testing {
     // Behavior: 
     //      - tests the drop command to see if the first value is being dropped properly
     //      - as well as if the a commit id provided isn't contained in the repository
-    // Exceptions:
-    //      - Throws an InterruptedException in case the test is interrupted 
     @Test
     @DisplayName("drop() - front case")
-    void testingDropping() throws InterruptedException{
+    void testingDropping() {
         commitAll(repo1, new String[]{"Zero", "One", "Two", "Three"});
         commitAll(repo2, new String[]{"Four"});
 
@@ -83,11 +83,9 @@ public class Testing {
     //      - tests the synchronize command to see if it can handle adding a value with a
     //      - larger timestamp from one repository (repo1) into another repository (repo2) that 
     //      - all values with smaller timestamps (adding to the beginning)
-    // Exceptions:
-    //      - Throws an InterruptedException in case the test is interrupted 
     @Test
     @DisplayName("synchronize() (repo1: [4], repo2: [1, 2, 3] / repo1 into repo2)")
-    public void testSynchronizeOne() throws InterruptedException {
+    public void testSynchronizeOne() {
         commitAll(repo2, new String[]{"One", "Two", "Three"});
         commitAll(repo1, new String[]{"Four"});
         
@@ -105,11 +103,9 @@ public class Testing {
     //      - tests the synchronize command to see if it can handle adding values with smaller
     //      - timestamps from one repository (repo2) into another repository (repo1) that has
     //      - a value with a larger timestamp than all the rest (adding to the end)
-    // Exceptions:
-    //      - Throws an InterruptedException in case the test is interrupted 
     @Test
     @DisplayName("synchronize() (repo1: [4], repo2: [1, 2, 3] / repo2 into repo1)")
-    public void testSynchronizeTwo() throws InterruptedException {
+    public void testSynchronizeTwo() {
         commitAll(repo2, new String[]{"One", "Two", "Three"});
         commitAll(repo1, new String[]{"Four"});
         
@@ -129,11 +125,9 @@ public class Testing {
     //      - tests the synchronize command to see if it can handle mixed timestamp values in
     //      - each of the repositories (some are larger timestamps and some are 
     //      - in each repository smaller timestamps)
-    // Exceptions:
-    //      - Throws an InterruptedException in case the test is interrupted 
     @Test
     @DisplayName("synchronize() (repo1: [1, 4, 5], repo2: [2, 3, 6, 7] / repo2 into repo1)")
-    public void testSynchronizeThree() throws InterruptedException {
+    public void testSynchronizeThree() {
         commitAll(repo1, new String[]{"One"});
         commitAll(repo2, new String[]{"Two", "Three"});
         commitAll(repo1, new String[]{"Four", "Five"});
@@ -155,11 +149,9 @@ public class Testing {
     //      - in each repository smaller timestamps) and makes sure that the synchronize command
     //      - provides the same commit history when synchronizing the same repositories (but
     //      - instead of repo2 into repo1, doing repo1 into repo2)
-    // Exceptions:
-    //      - Throws an InterruptedException in case the test is interrupted 
     @Test
     @DisplayName("synchronize() (repo1: [1, 4, 5], repo2: [2, 3, 6, 7] / repo1 into repo2)")
-    public void testSynchronizeFour() throws InterruptedException {
+    public void testSynchronizeFour() {
         commitAll(repo1, new String[]{"One"});
         commitAll(repo2, new String[]{"Two", "Three"});
         commitAll(repo1, new String[]{"Four", "Five"});
@@ -180,11 +172,9 @@ public class Testing {
     //      - tests the synchronize command to see if it can handle adding a value with a
     //      - smaller timestamp from one repository (repo1) into another repository (repo2) that 
     //      - contains all values with larger timestamps (adding to the end)
-    // Exceptions:
-    //      - Throws an InterruptedException in case the test is interrupted 
     @Test
     @DisplayName("synchronize() (repo1: [1], repo2: [2, 3] / repo2 into repo1)")
-    public void testSynchronizeFive() throws InterruptedException {
+    public void testSynchronizeFive() {
         commitAll(repo1, new String[]{"One"});
         commitAll(repo2, new String[]{"Two", "Three"});
         
@@ -202,11 +192,9 @@ public class Testing {
     //      - tests the synchronize command to see if it can handle adding values with a
     //      - larger timestamp from one repository (repo2) into another repository (repo1) that 
     //      - contains a value with a smaller timestamp (adding to the beginning)
-    // Exceptions:
-    //      - Throws an InterruptedException in case the test is interrupted 
     @Test
     @DisplayName("synchronize() (repo1: [1], repo2: [2, 3] / repo1 into repo2)")
-    public void testSynchronizeSix() throws InterruptedException {
+    public void testSynchronizeSix() {
         commitAll(repo1, new String[]{"One"});
         commitAll(repo2, new String[]{"Two", "Three"});
         
@@ -223,11 +211,9 @@ public class Testing {
     // Behavior: 
     //      - tests the synchronize command to see how it handles when both repositories given
     //      - are empty (shouldn't change the repositories at all)
-    // Exceptions:
-    //      - Throws an InterruptedException in case the test is interrupted 
     @Test
     @DisplayName("synchronize() (repo1: null, repo2: null / repo2 into repo1)")
-    public void testSynchronizeSeven() throws InterruptedException {
+    public void testSynchronizeSeven() {
         
         assertEquals(0, repo1.getRepoSize());
         assertEquals(0, repo2.getRepoSize());
@@ -245,11 +231,9 @@ public class Testing {
     //      - that has commits being combined into it is empty, but the other repository (repo2)
     //      - that is providing commits isn't empty (should add all the commits from
     //      - repo2 into repo1)
-    // Exceptions:
-    //      - Throws an InterruptedException in case the test is interrupted 
     @Test
     @DisplayName("synchronize() (repo1: null, repo2: [1, 2] / repo2 into repo1)")
-    public void testSynchronizeEight() throws InterruptedException {
+    public void testSynchronizeEight() {
 
         commitAll(repo2, new String[]{"One", "Two"});
 
@@ -269,11 +253,9 @@ public class Testing {
     //      - that has commits being combined into it isn't empty, but the other 
     //      - repository (repo2) that is providing commits is empty (shouldn't change 
     //      - the repositories at all)
-    // Exceptions:
-    //      - Throws an InterruptedException in case the test is interrupted 
     @Test
     @DisplayName("synchronize() (repo1: null, repo2: [1, 2] / repo1 into repo2)")
-    public void testSynchronizeNine() throws InterruptedException {
+    public void testSynchronizeNine() {
 
         commitAll(repo2, new String[]{"One", "Two"});
 
@@ -289,15 +271,818 @@ public class Testing {
     }
 
 
+    // Behavior: 
+    //      - tests the synchronize command to see if it can handle inserting a repository
+    //      - (repo2) whose commits all fall between an older and a more recent stretch of 
+    //      - another repository (repo1)
+    @Test
+    @DisplayName("synchronize() (repo1: [1, 2, 6, 7], repo2: [3, 4, 5] / repo2 into repo1)")
+    public void testSynchronizeMiddle() {
+        commitAll(repo1, new String[]{"One", "Two"});
+        commitAll(repo2, new String[]{"Three", "Four", "Five"});
+        commitAll(repo1, new String[]{"Six", "Seven"});
+
+        repo1.synchronize(repo2);
+        assertEquals(7, repo1.getRepoSize());
+        assertEquals(0, repo2.getRepoSize());
+        assertNull(repo2.getRepoHead());
+
+        testHistory(repo1, 7, new String[]{"One", "Two", "Three", "Four", "Five", "Six", "Seven"});
+    }
+
+    // Behavior: 
+    //      - tests that many synchronizes of entirely older repositories (each one added to
+    //      - the oldest end of the time index) keep the repository in order, and that drops
+    //      - from both ends and the middle still work afterwards
+    @Test
+    @DisplayName("synchronize() - many entirely older repositories")
+    public void testSynchronizeManyOlder() {
+        String[] messages = new String[300];
+        Repository[] older = new Repository[100];
+        for (int i = 0; i < older.length; i++) {
+            messages[i] = "Old " + i;
+            older[i] = new Repository("older" + i);
+            older[i].commit(messages[i]);
+        }
+        for (int i = older.length; i < messages.length; i++) {
+            messages[i] = "New " + i;
+            repo1.commit(messages[i]);
+        }
+
+        for (int i = older.length - 1; i >= 0; i--) {
+            repo1.synchronize(older[i]);
+            assertEquals("" + i, repo1.getOldest());
+        }
+        assertEquals(300, repo1.getRepoSize());
+        testHistory(repo1, 300, messages);
+
+        assertTrue(repo1.drop("0"));
+        assertTrue(repo1.drop("150"));
+        assertTrue(repo1.drop("299"));
+        assertEquals(2, repo1.dropOldest(2));
+        assertEquals("3", repo1.getOldest());
+        assertEquals("298", repo1.getRepoHead());
+        assertEquals(295, repo1.getRepoSize());
+        assertEquals(295, repo1.getHistory(300).split("\n").length);
+    }
+
+    // Behavior: 
+    //      - tests that a repository stays consistent when it is committed to and dropped 
+    //      - from after a synchronize appended an entirely older repository to its end
+    @Test
+    @DisplayName("synchronize() then commit() and drop() (repo1: [3, 4], repo2: [1, 2])")
+    public void testSynchronizeThenModify() {
+        commitAll(repo2, new String[]{"Zero", "One"});
+        commitAll(repo1, new String[]{"Two", "Three"});
+
+        repo1.synchronize(repo2);
+        commitAll(repo1, new String[]{"Four"});
+        assertEquals(5, repo1.getRepoSize());
+        testHistory(repo1, 5, new String[]{"Zero", "One", "Two", "Three", "Four"});
+
+        assertTrue(repo1.drop("0"));
+        assertTrue(repo1.drop("2"));
+        assertFalse(repo1.drop("2"));
+        assertEquals(3, repo1.getRepoSize());
+        assertEquals("4", repo1.getRepoHead());
+
+        String[] history = repo1.getHistory(3).split("\n");
+        assertTrue(history[0].startsWith("4 at "));
+        assertTrue(history[1].startsWith("3 at "));
+        assertTrue(history[2].startsWith("1 at "));
+    }
+
+    // Behavior: 
+    //      - tests that the oldest commit is tracked through commit, drop and synchronize
+    //      - and that dropOldest removes commits from the oldest end of the repository
+    // Exceptions:
+    //      - An IllegalArgumentException is thrown by the dropOldest() method since
+    //      - k <= 0
+    @Test
+    @DisplayName("getOldest() and dropOldest()")
+    public void testOldest() {
+        assertNull(repo1.getOldest());
+        commitAll(repo2, new String[]{"Zero"});
+        commitAll(repo1, new String[]{"One", "Two", "Three", "Four"});
+        assertEquals("1", repo1.getOldest());
+
+        assertTrue(repo1.drop("1"));
+        assertEquals("2", repo1.getOldest());
+
+        repo1.synchronize(repo2);
+        assertEquals("0", repo1.getOldest());
+        assertNull(repo2.getOldest());
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            repo1.dropOldest(0);
+        });
+
+        assertEquals(2, repo1.dropOldest(2));
+        assertEquals(2, repo1.getRepoSize());
+        assertEquals("3", repo1.getOldest());
+        assertEquals("4", repo1.getRepoHead());
+
+        assertEquals(2, repo1.dropOldest(5));
+        assertEquals(0, repo1.getRepoSize());
+        assertNull(repo1.getOldest());
+        assertNull(repo1.getRepoHead());
+    }
+
+    // Behavior: 
+    //      - tests that trimming a repository to its most recent commits as new commits arrive
+    //      - (a retention window) keeps the right commits, including after a fork
+    @Test
+    @DisplayName("dropOldest() - retention window")
+    public void testDropOldestWindow() {
+        for (int i = 0; i < 1000; i++) {
+            repo1.commit("Commit " + i);
+            if (repo1.getRepoSize() > 10) {
+                assertEquals(1, repo1.dropOldest(1));
+            }
+        }
+        assertEquals(10, repo1.getRepoSize());
+        assertEquals("990", repo1.getOldest());
+
+        Repository forked = repo1.fork("forked");
+        assertEquals(5, forked.dropOldest(5));
+        assertEquals("995", forked.getOldest());
+        assertEquals("990", repo1.getOldest());
+        assertEquals(10, repo1.getHistory(20).split("\\n").length);
+        assertTrue(repo1.getHistory(20).endsWith(": Commit 990\n"));
+    }
+
+    // Behavior: 
+    //      - tests that trimming the oldest commits of a fork of a large repository copies
+    //      - neither the commits nor the time index, and that contains, drop and exports of
+    //      - the fork stop at its new oldest commit (which still links to the removed ones)
+    // Exceptions:
+    //      - Throws an IOException if the fork can't be exported or imported
+    @Test
+    @DisplayName("dropOldest() - trimming a fork of a large repository")
+    public void testDropOldestLargeFork() throws IOException {
+        Repository large = new Repository("large", 0);
+        for (int i = 0; i < 1 << 18; i++) {
+            large.commit("");
+        }
+        assertFalse(large.contains("missing"));
+        Repository forked = large.fork("forked");
+
+        long before = allocatedBytes();
+        assertEquals(2, forked.dropOldest(2));
+        long allocated = allocatedBytes() - before;
+        assertTrue(allocated < 1 << 16, allocated + " bytes allocated");
+
+        assertEquals((1 << 18) - 2, forked.getRepoSize());
+        assertEquals("2", forked.getOldest());
+        assertEquals("0", large.getOldest());
+        assertFalse(forked.contains("1"));
+        assertFalse(forked.drop("0"));
+        assertTrue(large.contains("0"));
+
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        RepositoryIO.exportBinary(forked, Channels.newChannel(binary));
+        Repository imported = RepositoryIO.importBinary("imported",
+                Channels.newChannel(new ByteArrayInputStream(binary.toByteArray())));
+        assertEquals((1 << 18) - 2, imported.getRepoSize());
+        assertEquals("2", imported.getOldest());
+
+        assertTrue(forked.undo());
+        assertEquals("0", forked.getOldest());
+        assertTrue(forked.contains("1"));
+    }
+
+    // Behavior: 
+    //      - tests that a forked repository starts with the same commits as the original
+    //      - and that drops in either repository don't affect the other one
+    @Test
+    @DisplayName("fork() - drop() in fork and original")
+    public void testForkDrop() {
+        commitAll(repo1, new String[]{"Zero", "One", "Two", "Three"});
+        Repository forked = repo1.fork("forked");
+
+        assertEquals(4, forked.getRepoSize());
+        assertEquals(repo1.getHistory(4), forked.getHistory(4));
+
+        assertTrue(forked.drop("1"));
+        assertTrue(forked.drop("3"));
+        assertEquals(2, forked.getRepoSize());
+        assertEquals(4, repo1.getRepoSize());
+        testHistory(repo1, 4, new String[]{"Zero", "One", "Two", "Three"});
+
+        assertTrue(repo1.drop("0"));
+        assertEquals("0", forked.getOldest());
+        assertEquals("1", repo1.getOldest());
+        assertEquals(1, forked.dropOldest(1));
+        assertEquals("2", forked.getOldest());
+        assertTrue(repo1.contains("2"));
+        assertTrue(repo1.contains("3"));
+    }
+
+    // Behavior: 
+    //      - tests that synchronizing into a forked repository (and committing to both)
+    //      - leaves the original repository untouched
+    @Test
+    @DisplayName("fork() - synchronize() into fork")
+    public void testForkSynchronize() {
+        commitAll(repo1, new String[]{"Zero"});
+        commitAll(repo2, new String[]{"One"});
+        commitAll(repo1, new String[]{"Two"});
+        Repository forked = repo1.fork("forked");
+        String before = repo1.getHistory(2);
+
+        forked.synchronize(repo2);
+        assertEquals(3, forked.getRepoSize());
+        testHistory(forked, 3, new String[]{"Zero", "One", "Two"});
+        assertEquals(2, repo1.getRepoSize());
+        assertEquals(before, repo1.getHistory(2));
+
+        commitAll(repo1, new String[]{"Three"});
+        commitAll(forked, new String[]{"Four"});
+        assertFalse(forked.contains("3"));
+        assertFalse(repo1.contains("4"));
+        assertFalse(repo1.contains("1"));
+    }
+
+    // Behavior: 
+    //      - tests that synchronizing a fork back into its original (or the original into the
+    //      - fork) keeps each commit they share only once
+    @Test
+    @DisplayName("fork() - synchronize() a fork back into its original")
+    public void testForkSynchronizeBack() {
+        commitAll(repo1, new String[]{"Zero", "One"});
+        Repository forked = repo1.fork("forked");
+        commitAll(forked, new String[]{"Two"});
+
+        repo1.synchronize(forked);
+        assertEquals(3, repo1.getRepoSize());
+        assertEquals(0, forked.getRepoSize());
+        testHistory(repo1, 3, new String[]{"Zero", "One", "Two"});
+
+        // both sides change after the fork, and the fork drops a shared commit that the
+        // original still holds
+        forked = repo1.fork("forked");
+        assertTrue(forked.drop("1"));
+        commitAll(forked, new String[]{"Three"});
+        commitAll(repo1, new String[]{"Four"});
+
+        forked.synchronize(repo1);
+        assertEquals(5, forked.getRepoSize());
+        testHistory(forked, 5, new String[]{"Zero", "One", "Two", "Three", "Four"});
+        assertEquals(5, new HashSet<>(Arrays.asList(forked.getHistory(5).split("\n"))).size());
+        assertTrue(forked.undo());
+        assertEquals(3, forked.getRepoSize());
+        assertEquals(4, repo1.getRepoSize());
+    }
+
+    // Behavior: 
+    //      - tests that committing to a large repository or to its fork after forking, and
+    //      - looking for a missing id in the fork, copy neither the commits nor the time index
+    //      - (a copy of the index alone would allocate more than a megabyte)
+    @Test
+    @DisplayName("fork() - commit() after forking a large repository")
+    public void testForkLargeCommit() {
+        Repository large = new Repository("large", 0);
+        for (int i = 0; i < 1 << 18; i++) {
+            large.commit("");
+        }
+        assertFalse(large.contains("missing"));
+
+        long before = allocatedBytes();
+        Repository forked = large.fork("forked");
+        String forkedHead = forked.commit("Fork");
+        String largeHead = large.commit("Original");
+        assertFalse(forked.contains("missing"));
+        long allocated = allocatedBytes() - before;
+        assertTrue(allocated < 1 << 16, allocated + " bytes allocated");
+
+        assertEquals((1 << 18) + 1, forked.getRepoSize());
+        assertEquals((1 << 18) + 1, large.getRepoSize());
+        assertEquals(forkedHead, forked.getRepoHead());
+        assertEquals(largeHead, large.getRepoHead());
+        assertFalse(forked.contains(largeHead));
+        assertFalse(large.contains(forkedHead));
+        assertTrue(forked.contains("0"));
+        String[] history = forked.getHistory(2).split("\n");
+        assertTrue(history[0].endsWith(": Fork"));
+        assertTrue(history[1].startsWith(((1 << 18) - 1) + " at "));
+    }
+
+    // Behavior: 
+    //      - tests that drops can be undone and redone, and that a new change clears the
+    //      - changes waiting to be redone
+    @Test
+    @DisplayName("undo() and redo() - drop()")
+    public void testUndoDrop() {
+        assertFalse(repo1.undo());
+        commitAll(repo1, new String[]{"Zero", "One", "Two"});
+
+        assertTrue(repo1.drop("1"));
+        assertEquals(1, repo1.dropOldest(1));
+        assertEquals(1, repo1.getRepoSize());
+
+        assertTrue(repo1.undo());
+        assertTrue(repo1.undo());
+        assertEquals(3, repo1.getRepoSize());
+        assertEquals("0", repo1.getOldest());
+        testHistory(repo1, 3, new String[]{"Zero", "One", "Two"});
+
+        assertTrue(repo1.redo());
+        assertFalse(repo1.contains("1"));
+        assertEquals(2, repo1.getRepoSize());
+
+        commitAll(repo1, new String[]{"Three"});
+        assertFalse(repo1.redo());
+        assertTrue(repo1.undo());
+        assertEquals("2", repo1.getRepoHead());
+
+        // the restored repository can be changed again from where the undo left it
+        assertTrue(repo1.drop("0"));
+        assertEquals("2", repo1.getOldest());
+        assertEquals(1, repo1.dropOldest(1));
+        assertEquals(0, repo1.getRepoSize());
+        assertTrue(repo1.undo());
+        assertTrue(repo1.undo());
+        assertTrue(repo1.contains("0"));
+        assertEquals(1, repo1.dropOldest(1));
+        assertEquals("2", repo1.getOldest());
+    }
+
+    // Behavior: 
+    //      - tests that undoing a synchronize gives the other repository its commits back,
+    //      - and that it can't be undone once the other repository has changed
+    // Exceptions:
+    //      - An IllegalStateException is thrown by the undo() method since the other
+    //      - repository was changed after the synchronize
+    @Test
+    @DisplayName("undo() and redo() - synchronize()")
+    public void testUndoSynchronize() {
+        commitAll(repo1, new String[]{"Zero"});
+        commitAll(repo2, new String[]{"One"});
+        commitAll(repo1, new String[]{"Two"});
+
+        repo1.synchronize(repo2);
+        assertTrue(repo1.undo());
+        assertEquals(2, repo1.getRepoSize());
+        assertEquals(1, repo2.getRepoSize());
+        assertEquals("1", repo2.getRepoHead());
+        assertFalse(repo1.contains("1"));
+
+        assertTrue(repo1.redo());
+        assertEquals(3, repo1.getRepoSize());
+        assertEquals(0, repo2.getRepoSize());
+        testHistory(repo1, 3, new String[]{"Zero", "One", "Two"});
+
+        commitAll(repo2, new String[]{"Three"});
+        assertThrows(IllegalStateException.class, () -> {
+            repo1.undo();
+        });
+        assertEquals(3, repo1.getRepoSize());
+
+        // the stale synchronize (and the commits before it) are forgotten, so the journal
+        // works again for later changes
+        assertFalse(repo1.undo());
+        commitAll(repo1, new String[]{"Four"});
+        assertTrue(repo1.undo());
+        assertEquals(3, repo1.getRepoSize());
+        assertFalse(repo1.undo());
+    }
+
+    // Behavior: 
+    //      - tests that a synchronize can't be redone once the other repository has been
+    //      - forked, since redoing it would relink commits that the fork shares
+    // Exceptions:
+    //      - An IllegalStateException is thrown by the redo() method since the other
+    //      - repository was forked after the synchronize was undone
+    @Test
+    @DisplayName("undo() and redo() - synchronize() then fork()")
+    public void testRedoAfterFork() {
+        commitAll(repo1, new String[]{"Zero"});
+        commitAll(repo2, new String[]{"One"});
+        commitAll(repo1, new String[]{"Two"});
+
+        repo1.synchronize(repo2);
+        assertTrue(repo1.undo());
+        Repository forked = repo2.fork("forked");
+
+        assertThrows(IllegalStateException.class, () -> {
+            repo1.redo();
+        });
+        assertFalse(repo1.redo());
+        assertEquals(1, forked.getRepoSize());
+        assertTrue(forked.getHistory(2).startsWith("1 at "));
+        assertEquals(1, forked.getHistory(2).split("\n").length);
+        assertEquals(2, repo1.getRepoSize());
+    }
+
+    // Behavior: 
+    //      - tests that the journal only remembers as many changes as its depth
+    @Test
+    @DisplayName("undo() - bounded journal")
+    public void testUndoJournalDepth() {
+        Repository shallow = new Repository("shallow", 2);
+        commitAll(shallow, new String[]{"Zero", "One", "Two"});
+
+        assertTrue(shallow.undo());
+        assertTrue(shallow.undo());
+        assertFalse(shallow.undo());
+        assertEquals(1, shallow.getRepoSize());
+
+        Repository noJournal = new Repository("noJournal", 0);
+        commitAll(noJournal, new String[]{"Three"});
+        assertFalse(noJournal.undo());
+
+        // a synchronize into a repository without a journal still takes the other
+        // repository's commits (and with them, its journal) away for good
+        commitAll(repo2, new String[]{"Four"});
+        noJournal.synchronize(repo2);
+        assertFalse(noJournal.undo());
+        assertFalse(repo2.undo());
+        assertEquals(2, noJournal.getRepoSize());
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            new Repository("negative", -1);
+        });
+    }
+
+    // Behavior: 
+    //      - tests that contains and drop give the right answers for ids that are and aren't
+    //      - in a repository (including a null id) as it grows, drops most of its commits and
+    //      - is synchronized
+    @Test
+    @DisplayName("contains() and drop() - many misses")
+    public void testContainsMisses() {
+        assertFalse(repo1.contains(null));
+        assertFalse(repo1.drop(null));
+
+        for (int i = 0; i < 200; i++) {
+            repo1.commit("Commit " + i);
+        }
+        commitAll(repo2, new String[]{"Other"});
+
+        for (int i = 0; i < 200; i++) {
+            assertTrue(repo1.contains("" + i));
+        }
+        assertFalse(repo1.contains("200"));
+        assertFalse(repo1.drop("200"));
+        assertFalse(repo1.contains("-1"));
+        assertFalse(repo1.contains(null));
+        assertFalse(repo1.drop(null));
+
+        for (int i = 0; i < 150; i++) {
+            assertTrue(repo1.drop("" + i));
+        }
+        assertFalse(repo1.contains("0"));
+        assertTrue(repo1.contains("150"));
+
+        repo1.synchronize(repo2);
+        assertTrue(repo1.contains("200"));
+        assertFalse(repo2.contains("200"));
+        assertEquals(51, repo1.getRepoSize());
+    }
+
+    // Behavior: 
+    //      - tests that the client can find every repository that contains a commit
+    @Test
+    @DisplayName("Client.whichReposContain()")
+    public void testWhichReposContain() {
+        Map<String, Repository> repos = new HashMap<>();
+        repos.put("repo1", repo1);
+        repos.put("repo2", repo2);
+        commitAll(repo1, new String[]{"Zero"});
+        commitAll(repo2, new String[]{"One"});
+
+        assertEquals(List.of("repo1"), Client.whichReposContain(repos, "0"));
+        assertEquals(List.of("repo2"), Client.whichReposContain(repos, "1"));
+        assertEquals(List.of(), Client.whichReposContain(repos, "2"));
+
+        // after a fork, every repository holding the commit is reported, in name order
+        repos.put("a-fork", repo1.fork("a-fork"));
+        repos.put("z-fork", repo1.fork("z-fork"));
+        assertEquals(List.of("a-fork", "repo1", "z-fork"), Client.whichReposContain(repos, "0"));
+    }
+
+    // Behavior: 
+    //      - tests that synchronize orders commits made as fast as possible (many within
+    //      - the same millisecond) exactly in the order they were made
+    @Test
+    @DisplayName("synchronize() - commits made within the same millisecond")
+    public void testSynchronizeSameMillisecond() {
+        String[] messages = new String[1000];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = "Commit " + i;
+            Repository target = i % 3 == 0 ? repo2 : repo1;
+            target.commit(messages[i]);
+        }
+
+        repo1.synchronize(repo2);
+        assertEquals(1000, repo1.getRepoSize());
+        testHistory(repo1, 1000, messages);
+
+        String[] history = repo1.getHistory(1000).split("\n");
+        for (int i = 0; i < history.length; i++) {
+            assertTrue(history[i].startsWith((999 - i) + " at "));
+        }
+    }
+
+    // Behavior: 
+    //      - tests that a sharded repository spreads its commits across shards but still
+    //      - reports its head, size and history as if it were a single repository
+    // Exceptions:
+    //      - An IllegalArgumentException is thrown by the constructor since the number of
+    //      - shards is less than one
+    @Test
+    @DisplayName("ShardedRepository - commit(), drop() and getHistory()")
+    public void testShardedRepository() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            new ShardedRepository("sharded", 0);
+        });
+
+        ShardedRepository sharded = new ShardedRepository("sharded", 3);
+        assertNull(sharded.getRepoHead());
+        assertEquals("sharded - No commits", sharded.toString());
+
+        String[] messages = new String[]{"Zero", "One", "Two", "Three", "Four", "Five", "Six"};
+        for (String message : messages) {
+            sharded.commit(message);
+        }
+
+        assertEquals(7, sharded.getRepoSize());
+        assertEquals("6", sharded.getRepoHead());
+
+        String[] history = sharded.getHistory(10).split("\n");
+        assertEquals(7, history.length);
+        for (int i = 0; i < history.length; i++) {
+            assertTrue(history[i].startsWith((6 - i) + " at "));
+            assertTrue(history[i].endsWith(messages[6 - i]));
+        }
+
+        assertTrue(sharded.contains("3"));
+        assertTrue(sharded.drop("3"));
+        assertFalse(sharded.contains("3"));
+        assertFalse(sharded.drop("3"));
+        assertFalse(sharded.contains("7"));
+        assertFalse(sharded.contains(null));
+        assertFalse(sharded.drop(null));
+        assertEquals(6, sharded.getRepoSize());
+        assertTrue(sharded.getHistory(4).startsWith("6 at "));
+    }
+
+    // Behavior: 
+    //      - tests that synchronizing sharded repositories (with different numbers of
+    //      - shards) keeps every commit and the overall commit order
+    @Test
+    @DisplayName("ShardedRepository - synchronize()")
+    public void testShardedSynchronize() {
+        ShardedRepository first = new ShardedRepository("first", 4);
+        ShardedRepository second = new ShardedRepository("second", 7);
+
+        for (int i = 0; i < 500; i++) {
+            if (i % 5 < 2) {
+                first.commit("Commit " + i);
+            } else {
+                second.commit("Commit " + i);
+            }
+        }
+
+        first.synchronize(second);
+        assertEquals(500, first.getRepoSize());
+        assertEquals(0, second.getRepoSize());
+
+        String[] history = first.getHistory(500).split("\n");
+        for (int i = 0; i < history.length; i++) {
+            assertTrue(history[i].startsWith((499 - i) + " at "));
+        }
+    }
+
+    // Behavior: 
+    //      - tests that an off-heap repository commits, drops, synchronizes and prints its
+    //      - history the same way as a regular repository
+    @Test
+    @DisplayName("ArenaRepository - commit(), drop(), synchronize() and getHistory()")
+    public void testArenaRepository() {
+        ArenaRepository arena1 = new ArenaRepository("arena1");
+        ArenaRepository arena2 = new ArenaRepository("arena2");
+        assertNull(arena1.getRepoHead());
+        assertEquals("arena1 - No commits", arena1.toString());
+
+        String[] messages = new String[]{"Zero", "One", "Two", "Three", "Four", "F\u00fcnf"};
+        for (int i = 0; i < messages.length; i++) {
+            (i % 2 == 0 ? arena1 : arena2).commit(messages[i]);
+        }
+        assertEquals("4", arena1.getRepoHead());
+        assertTrue(arena1.toString().endsWith("Four"));
+
+        arena1.synchronize(arena2);
+        assertEquals(6, arena1.getRepoSize());
+        assertEquals(0, arena2.getRepoSize());
+        assertNull(arena2.getRepoHead());
+
+        String[] history = arena1.getHistory(10).split("\n");
+        assertEquals(6, history.length);
+        for (int i = 0; i < history.length; i++) {
+            assertTrue(history[i].startsWith((5 - i) + " at "));
+            assertTrue(history[i].endsWith(": " + messages[5 - i]));
+        }
+
+        assertTrue(arena1.drop("5"));
+        assertTrue(arena1.drop("2"));
+        assertFalse(arena1.drop("2"));
+        assertFalse(arena1.contains("five"));
+        assertTrue(arena1.contains("3"));
+        assertEquals("4", arena1.getRepoHead());
+
+        // ids are matched as exact text, like in Repository
+        assertFalse(arena1.contains("03"));
+        assertFalse(arena1.contains("+3"));
+        assertFalse(arena1.drop("+0"));
+        assertFalse(arena1.drop("00"));
+        assertTrue(arena1.contains("0"));
+
+        arena1.commit("Six");
+        assertEquals(5, arena1.getRepoSize());
+        assertTrue(arena1.getHistory(1).startsWith("6 at "));
+    }
+
+    // Behavior: 
+    //      - tests an off-heap repository whose commits span several buffers
+    @Test
+    @DisplayName("ArenaRepository - many commits")
+    public void testArenaRepositoryManyCommits() {
+        ArenaRepository arena = new ArenaRepository("arena");
+        for (int i = 0; i < 100000; i++) {
+            arena.commit("Commit " + i);
+        }
+
+        assertEquals(100000, arena.getRepoSize());
+        assertTrue(arena.contains("0"));
+        assertTrue(arena.drop("0"));
+        assertTrue(arena.getHistory(1).endsWith(": Commit 99999\n"));
+        assertEquals(99999, arena.getHistory(100000).split("\n").length);
+    }
+
+    // Behavior: 
+    //      - tests that a repository written in the binary format and in NDJSON is read
+    //      - back with the same ids, messages, timestamps and commit order, and that commits
+    //      - made afterwards get new ids
+    // Exceptions:
+    //      - Throws an IOException if the export or import fails
+    @Test
+    @DisplayName("RepositoryIO - export and import round trip")
+    public void testExportImport() throws IOException {
+        repo1.commit("Zero");
+        repo1.commit("Quote \" backslash \\ newline \n tab \t bell \u0007 caf\u00e9");
+        repo1.commit("");
+        repo1.commit("Three");
+        assertTrue(repo1.drop("0"));
+
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        RepositoryIO.exportBinary(repo1, Channels.newChannel(binary));
+        ByteArrayOutputStream ndjson = new ByteArrayOutputStream();
+        RepositoryIO.exportNdjson(repo1, Channels.newChannel(ndjson));
+        assertEquals(3, ndjson.toString("UTF-8").split("\n").length);
+
+        Repository.Commit.resetIds();
+        Repository fromBinary = RepositoryIO.importBinary("fromBinary",
+                Channels.newChannel(new ByteArrayInputStream(binary.toByteArray())));
+        Repository fromNdjson = RepositoryIO.importNdjson("fromNdjson",
+                Channels.newChannel(new ByteArrayInputStream(ndjson.toByteArray())));
+
+        for (Repository imported : new Repository[]{fromBinary, fromNdjson}) {
+            assertEquals(3, imported.getRepoSize());
+            assertEquals("1", imported.getOldest());
+            assertEquals(repo1.getHistory(3), imported.getHistory(3));
+
+            Repository.Commit original = repo1.getHeadCommit();
+            Repository.Commit copy = imported.getHeadCommit();
+            while (original != null) {
+                assertEquals(original.id, copy.id);
+                assertEquals(original.message, copy.message);
+                assertEquals(original.timeStamp, copy.timeStamp);
+                assertEquals(original.order, copy.order);
+                original = original.past;
+                copy = copy.past;
+            }
+            assertNull(copy);
+        }
+
+        // both imports hold the same three commits, which a synchronize only keeps once
+        assertEquals("4", fromBinary.commit("Four"));
+        assertEquals("5", fromNdjson.commit("Five"));
+        fromBinary.synchronize(fromNdjson);
+        assertEquals(5, fromBinary.getRepoSize());
+        assertEquals("5", fromBinary.getRepoHead());
+    }
+
+    // Behavior: 
+    //      - tests that reading something that isn't a valid export fails
+    @Test
+    @DisplayName("RepositoryIO - malformed input")
+    public void testImportMalformed() {
+        assertThrows(IOException.class, () -> {
+            RepositoryIO.importBinary("bad", Channels.newChannel(
+                    new ByteArrayInputStream(new byte[]{1, 2, 3})));
+        });
+        assertThrows(IOException.class, () -> {
+            RepositoryIO.importNdjson("bad", Channels.newChannel(
+                    new ByteArrayInputStream("{\"id\":\"1\"}\n".getBytes())));
+        });
+        assertThrows(IOException.class, () -> {
+            String outOfOrder = "{\"id\":\"1\",\"timeStamp\":1,\"order\":1,\"message\":\"a\"}\n"
+                    + "{\"id\":\"2\",\"timeStamp\":2,\"order\":2,\"message\":\"b\"}\n";
+            RepositoryIO.importNdjson("bad", Channels.newChannel(
+                    new ByteArrayInputStream(outOfOrder.getBytes())));
+        });
+
+        // a huge record length is rejected before any memory is set aside for the record
+        assertThrows(IOException.class, () -> {
+            ByteBuffer hugeRecord = ByteBuffer.allocate(9).putInt(0x4D474954).put((byte) 1)
+                    .putInt(0x7FFFFFF0);
+            RepositoryIO.importBinary("bad", Channels.newChannel(
+                    new ByteArrayInputStream(hugeRecord.array())));
+        });
+    }
+
+    // Behavior: 
+    //      - tests that reading an unchanged history again is answered by the history cache,
+    //      - and that changes only make the cache forget the histories they affected
+    @Test
+    @DisplayName("getHistory() - history cache")
+    public void testHistoryCache() {
+        HistoryCache cache = repo1.getHistoryCache();
+        assertNotSame(cache, repo2.getHistoryCache());
+        commitAll(repo1, new String[]{"Zero", "One", "Two", "Three"});
+
+        String history = repo1.getHistory(2);
+        long hits = cache.getHits();
+        assertSame(history, repo1.getHistory(2));
+        assertEquals(hits + 1, cache.getHits());
+
+        // asking for more commits than the repository holds gives the same page
+        String everything = repo1.getHistory(4);
+        assertSame(everything, repo1.getHistory(50));
+
+        // dropping an old commit keeps the page of the two most recent commits
+        assertTrue(repo1.drop("1"));
+        hits = cache.getHits();
+        assertSame(history, repo1.getHistory(2));
+        assertEquals(hits + 1, cache.getHits());
+        testHistory(repo1, 3, new String[]{"Zero", "Two", "Three"});
+
+        // a new commit shifts every page
+        commitAll(repo1, new String[]{"Four"});
+        long misses = cache.getMisses();
+        assertTrue(repo1.getHistory(2).startsWith("4 at "));
+        assertEquals(misses + 1, cache.getMisses());
+
+        // synchronizing or undoing changes the pages of both repositories
+        commitAll(repo2, new String[]{"Five"});
+        repo2.getHistory(1);
+        assertEquals(1, repo2.getHistoryCache().getPageCount());
+        repo1.synchronize(repo2);
+        assertEquals(0, repo2.getHistoryCache().getPageCount());
+        assertTrue(repo1.getHistory(1).startsWith("5 at "));
+        assertEquals("", repo2.getHistory(1));
+        assertTrue(repo1.undo());
+        assertTrue(repo1.getHistory(1).startsWith("4 at "));
+        assertTrue(repo2.getHistory(1).startsWith("5 at "));
+    }
+
+    // Behavior: 
+    //      - tests that the history cache stays within its size by forgetting the least
+    //      - recently used pages
+    @Test
+    @DisplayName("HistoryCache - size bound")
+    public void testHistoryCacheBound() {
+        HistoryCache cache = new HistoryCache(10);
+        cache.put(1, "aaaa");
+        cache.put(2, "bbbb");
+        assertEquals("aaaa", cache.get(1));
+
+        cache.put(3, "cccc");
+        assertEquals(2, cache.getPageCount());
+        assertEquals(8, cache.getUsedChars());
+        assertNull(cache.get(2));
+        assertEquals("aaaa", cache.get(1));
+
+        cache.put(4, "too many characters");
+        assertNull(cache.get(4));
+
+        cache.invalidate(1);
+        assertNull(cache.get(3));
+        assertEquals("aaaa", cache.get(1));
+        assertEquals(4, cache.getUsedChars());
+        assertEquals(3, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
 
     /////////////////////////////////////////////////////////////////////////////////
     // PROVIDED HELPER METHODS (You don't have to use these if you don't want to!) //
     /////////////////////////////////////////////////////////////////////////////////
 
-    // Commits all of the provided messages into the provided repo, making sure timestamps
-    // are correctly sequential (no ties). If used, make sure to include
-    //      'throws InterruptedException'
-    // much like we do with 'throws FileNotFoundException'. Example useage:
+    // Commits all of the provided messages into the provided repo. Commits are ordered by
+    // their clock readings, which never tie, so no sleeping is needed between them. Example
+    // useage:
     //
     // repo1:
     //      head -> null
@@ -309,7 +1094,7 @@ public class Testing {
     //
     // YOU DO NOT NEED TO UNDERSTAND HOW THIS METHOD WORKS TO USE IT! (this is why documentation
     // is important!)
-    public void commitAll(Repository repo, String[] messages) throws InterruptedException {
+    public void commitAll(Repository repo, String[] messages) {
         // Commit all of the provided messages
         for (String message : messages) {
             int size = repo.getRepoSize();
@@ -319,9 +1104,6 @@ public class Testing {
             assertEquals(size + 1, repo.getRepoSize(),
                          String.format("Size not correctly updated after commiting message [%s]",
                                        message));
-
-            // Sleep to guarantee that all commits have different time stamps
-            Thread.sleep(2);
         }
     }
 
@@ -369,4 +1151,11 @@ public class Testing {
                                      commit, backwardsIndex));
         }
     }
+
+    // Provides the number of bytes that the current thread has allocated so far, so that a test
+    // can make sure an operation didn't copy a large structure
+    public long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getCurrentThreadAllocatedBytes();
+    }
 }